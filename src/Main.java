@@ -1,9 +1,15 @@
 import java.io.File;
+import java.io.IOException;
 import java.util.Scanner;
+import src.compression.CompressionSession;
 import src.compression.CompressionStats;
 import src.compression.ImageCompressor;
-import src.error.ErrorMethod;
+import src.compression.StatsCache;
+import src.error.ErrorMetric;
+import src.error.ErrorMetrics;
+import src.model.Quadtree;
 import src.util.ImageUtil;
+import src.util.PixelPlanes;
 
 public class Main {
     
@@ -18,7 +24,14 @@ public class Main {
         try {
             // Get user inputs
             String inputPath = getInputPath(scanner);
-            ErrorMethod errorMethod = getErrorMethod(scanner);
+            
+            // Optional session keeping the image and statistics loaded
+            if (Boolean.getBoolean("quadtree.session")) {
+                runSession(scanner, inputPath);
+                return;
+            }
+            
+            ErrorMetric errorMethod = getErrorMethod(scanner);
             double threshold = getThreshold(scanner, errorMethod);
             int minBlockSize = getMinBlockSize(scanner);
             double targetRatio = getTargetCompressionRatio(scanner);
@@ -31,6 +44,60 @@ public class Main {
                 inputPath, outputPath, gifPath, errorMethod, threshold, minBlockSize, targetRatio
             );
             
+            // Optional YCbCr mode
+            if ("ycbcr".equalsIgnoreCase(System.getProperty("quadtree.colorSpace"))) {
+                double chromaThreshold = Double.parseDouble(
+                    System.getProperty("quadtree.chromaThreshold", String.valueOf(threshold)));
+                int chromaMinBlockSize = Integer.getInteger("quadtree.chromaMinBlockSize", minBlockSize);
+                compressor.setYCbCrMode(chromaThreshold, chromaMinBlockSize);
+            }
+            
+            // Optional tiled forest
+            int tileSize = Integer.getInteger("quadtree.tileSize", 0);
+            if (tileSize > 0) {
+                compressor.setTileSize(tileSize);
+            }
+            
+            // Optional content-aware splits
+            if ("adaptive".equalsIgnoreCase(System.getProperty("quadtree.splits"))) {
+                compressor.setAdaptiveSplits(true);
+            }
+            
+            // Optional output size, e.g. 640x480
+            String outputSize = System.getProperty("quadtree.outputSize");
+            if (outputSize != null && outputSize.matches("\\d+x\\d+")) {
+                String[] size = outputSize.split("x");
+                compressor.setOutputSize(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+            }
+            
+            // Optional serialized tree next to the image
+            String treeFile = System.getProperty("quadtree.treeFile");
+            if (treeFile != null && !treeFile.isEmpty()) {
+                compressor.setTreePath(treeFile);
+            }
+            
+            // Optional on-disk cache
+            String cacheDir = System.getProperty("quadtree.cache");
+            if (cacheDir != null && !cacheDir.isEmpty()) {
+                long cacheMb = Long.getLong("quadtree.cache.maxMB", 2048);
+                compressor.setCache(new StatsCache(new File(cacheDir), cacheMb * 1024 * 1024));
+            }
+            
+            // Optional leaf palette, at most 256 colors
+            int paletteSize = Integer.getInteger("quadtree.palette", 0);
+            if (paletteSize > 0) {
+                compressor.setPaletteSize(paletteSize);
+            }
+            
+            // Optional off-heap integral tables, direct memory or mapped scratch files
+            String offHeap = System.getProperty("quadtree.offHeap");
+            if ("direct".equalsIgnoreCase(offHeap)) {
+                compressor.setOffHeapStatistics(true, null);
+            } else if ("mapped".equalsIgnoreCase(offHeap)) {
+                String scratchDir = System.getProperty("quadtree.offHeap.dir", System.getProperty("java.io.tmpdir"));
+                compressor.setOffHeapStatistics(true, new File(scratchDir));
+            }
+            
             CompressionStats stats = compressor.compress();
             
             // Show results
@@ -49,6 +116,67 @@ public class Main {
         }
     }
     
+    // Repeated runs on one decoded image until quit
+    private static void runSession(Scanner scanner, String inputPath) throws IOException {
+        CompressionSession session = new CompressionSession(new File(inputPath));
+        PixelPlanes planes = session.getPlanes();
+        System.out.println("Loaded " + planes.getWidth() + "x" + planes.getHeight() + " image in "
+            + session.getDecodeMs() + " ms");
+        
+        ErrorMetric errorMethod = getErrorMethod(scanner);
+        double threshold = getThreshold(scanner, errorMethod);
+        int minBlockSize = getMinBlockSize(scanner);
+        
+        while (true) {
+            long statsBefore = session.getStatsMs();
+            Quadtree tree = session.run(errorMethod, threshold, minBlockSize);
+            if (session.getStatsMs() > statsBefore) {
+                System.out.println("Statistics computed in " + (session.getStatsMs() - statsBefore) + " ms");
+            }
+            System.out.printf("%s tree: %d nodes, depth %d, %.1f ms%n",
+                session.wasPruned() ? "Pruned" : "Built", tree.getNodeCount(), tree.getDepth(), session.getLastRunMs());
+            
+            // Next change
+            boolean changed = false;
+            while (!changed) {
+                System.out.print("\nthreshold <value> | block <size> | method | save <path> | quit: ");
+                if (!scanner.hasNextLine()) return;
+                String[] command = scanner.nextLine().trim().split("\\s+", 2);
+                try {
+                    switch (command[0].toLowerCase()) {
+                        case "threshold":
+                            threshold = Double.parseDouble(command[1]);
+                            changed = true;
+                            break;
+                        case "block":
+                            minBlockSize = Integer.parseInt(command[1]);
+                            changed = true;
+                            break;
+                        case "method":
+                            errorMethod = getErrorMethod(scanner);
+                            threshold = getThreshold(scanner, errorMethod);
+                            changed = true;
+                            break;
+                        case "save":
+                            long saveMs = session.save(command[1]);
+                            System.out.println("Saved to " + command[1] + " in " + saveMs + " ms");
+                            break;
+                        case "quit":
+                            return;
+                        default:
+                            System.out.println("Error: Unknown command.");
+                    }
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                    System.out.println("Error: Command needs a valid value.");
+                }
+                if (changed && (threshold <= 0 || minBlockSize < 1)) {
+                    System.out.println("Error: Threshold and block size must be positive.");
+                    changed = false;
+                }
+            }
+        }
+    }
+    
     // Get image path
     private static String getInputPath(Scanner scanner) {
         String path = "";
@@ -81,16 +209,16 @@ public class Main {
     }
     
     // Select error method
-    private static ErrorMethod getErrorMethod(Scanner scanner) {
-        ErrorMethod method = null;
+    private static ErrorMetric getErrorMethod(Scanner scanner) {
+        ErrorMetric method = null;
         
         while (method == null) {
-            System.out.println("\n" + ErrorMethod.getAvailableMethods());
-            System.out.print("Select error measurement method (1-" + ErrorMethod.values().length + "): ");
+            System.out.println("\n" + ErrorMetrics.getAvailableMethods());
+            System.out.print("Select error measurement method (1-" + ErrorMetrics.all().size() + "): ");
             
             try {
                 int choice = Integer.parseInt(scanner.nextLine().trim());
-                method = ErrorMethod.getById(choice);
+                method = ErrorMetrics.getById(choice);
                 
                 if (method == null) {
                     System.out.println("Error: Invalid choice. Please select a number from the list.");
@@ -104,20 +232,12 @@ public class Main {
     }
     
     // Set error threshold
-    private static double getThreshold(Scanner scanner, ErrorMethod errorMethod) {
+    private static double getThreshold(Scanner scanner, ErrorMetric errorMethod) {
         double threshold = 0;
         boolean valid = false;
         
         // Range suggestions
-        String hint;
-        switch (errorMethod) {
-            case VARIANCE:   hint = "Suggested range: 10-1000"; break;
-            case MAD:        hint = "Suggested range: 5-100"; break;
-            case MAX_DIFF:   hint = "Suggested range: 10-200"; break;
-            case ENTROPY:    hint = "Suggested range: 0.1-5.0"; break;
-            case SSIM:       hint = "Suggested range: 0.01-0.5"; break;
-            default:         hint = "Enter a positive number";
-        }
+        String hint = errorMethod.getThresholdHint();
         
         while (!valid) {
             System.out.println("\nEnter the threshold value (" + hint + "):");
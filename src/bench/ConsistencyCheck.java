@@ -0,0 +1,209 @@
+package src.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import src.compression.StatsCache;
+import src.error.BlockStatistics;
+import src.error.BlockSummary;
+import src.error.ErrorMethod;
+import src.error.SummaryPyramid;
+import src.model.LinearQuadtree;
+import src.model.Quadtree;
+import src.util.PixelPlanes;
+
+// Invariant checks on generated images, exits non-zero when any fails
+public class ConsistencyCheck {
+    private interface Check {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) {
+        Map<String, Check> checks = new LinkedHashMap<>();
+        checks.put("corrupt cache entries are misses", ConsistencyCheck::corruptCacheEntries);
+        checks.put("merged summaries equal scanned ones", ConsistencyCheck::mergedSummaries);
+        checks.put("pyramid summaries equal scanned ones", ConsistencyCheck::pyramidSummaries);
+
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<String, Check> check : checks.entrySet()) {
+            try {
+                check.getValue().run();
+                System.out.println("PASS " + check.getKey());
+            } catch (Exception | AssertionError e) {
+                System.out.println("FAIL " + check.getKey() + ": " + e);
+                failed.add(check.getKey());
+            }
+        }
+
+        if (!failed.isEmpty()) {
+            System.out.println(failed.size() + " of " + checks.size() + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("All " + checks.size() + " checks passed");
+    }
+
+    // Noise with flat patches, so trees have both deep and shallow leaves
+    static PixelPlanes randomPlanes(int width, int height, int channels, long seed) {
+        Random random = new Random(seed);
+        byte[][] planes = new byte[channels][width * height];
+        for (int c = 0; c < channels; c++) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    boolean flat = ((x / 16) + (y / 16)) % 3 == 0;
+                    planes[c][y * width + x] = (byte) (flat ? 40 * (c + 1) : random.nextInt(256));
+                }
+            }
+        }
+        return new PixelPlanes(width, height, planes);
+    }
+
+    // Truncated, overflowing and garbage entries are dropped and counted as misses
+    static void corruptCacheEntries() throws IOException {
+        File directory = Files.createTempDirectory("cache-check").toFile();
+        try {
+            StatsCache cache = new StatsCache(directory, Long.MAX_VALUE);
+            PixelPlanes planes = randomPlanes(67, 45, 3, 1);
+            BlockStatistics stats = BlockStatistics.compute(planes, true);
+            Quadtree tree = new Quadtree(stats, 2, 50, ErrorMethod.VARIANCE, false);
+            cache.storePlanes("key", planes);
+            cache.storeStatistics("key", stats);
+            cache.storeTree("key", LinearQuadtree.fromQuadtree(tree));
+            File entry = new File(directory, "key");
+            File planesFile = new File(entry, "planes.bin");
+            File statsFile = new File(entry, "stats.bin");
+            File treeFile = entry.listFiles((dir, name) -> name.startsWith("tree-"))[0];
+
+            check(cache.loadPlanes("key") != null, "intact planes load");
+            check(cache.loadStatistics("key", planes, true) != null, "intact statistics load");
+            check(cache.loadTree("key", ErrorMethod.VARIANCE, 50, 2) != null, "intact tree loads");
+            int hits = cache.getHits();
+
+            // Dimensions whose product overflows an int
+            overwriteInt(planesFile, 4, 1 << 20);
+            overwriteInt(planesFile, 8, 1 << 20);
+            // Short read of the tables
+            truncate(statsFile, statsFile.length() / 2);
+            // Bad magic on the tree
+            overwriteInt(treeFile, 0, 0x12345678);
+
+            int misses = cache.getMisses();
+            check(cache.loadPlanes("key") == null, "overflowing planes are a miss");
+            check(cache.loadStatistics("key", planes, true) == null, "truncated statistics are a miss");
+            check(cache.loadTree("key", ErrorMethod.VARIANCE, 50, 2) == null, "bad tree magic is a miss");
+            check(cache.getMisses() == misses + 3 && cache.getHits() == hits, "misses counted, hits unchanged");
+            check(!planesFile.exists() && !statsFile.exists() && !treeFile.exists(), "corrupt files deleted");
+        } finally {
+            File[] entries = directory.listFiles();
+            if (entries != null) {
+                for (File entry : entries) {
+                    File[] files = entry.listFiles();
+                    if (files != null) for (File file : files) file.delete();
+                    entry.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    // Quadrants of odd-sized blocks merge to the parent's scanned statistics
+    static void mergedSummaries() {
+        Set<BlockSummary.Statistic> all = EnumSet.allOf(BlockSummary.Statistic.class);
+        Random random = new Random(2);
+        for (int channels : new int[] { 1, 3 }) {
+            PixelPlanes planes = randomPlanes(67, 45, channels, channels);
+            BlockStatistics stats = BlockStatistics.compute(planes, true);
+            for (int i = 0; i < 200; i++) {
+                int width = 2 + random.nextInt(planes.getWidth() - 1);
+                int height = 2 + random.nextInt(planes.getHeight() - 1);
+                int x = random.nextInt(planes.getWidth() - width + 1);
+                int y = random.nextInt(planes.getHeight() - height + 1);
+                int halfWidth = width / 2;
+                int halfHeight = height / 2;
+                BlockSummary merged = ErrorMethod.ENTROPY.merge(
+                    BlockSummary.of(stats, x, y, halfWidth, halfHeight, all),
+                    BlockSummary.of(stats, x + halfWidth, y, width - halfWidth, halfHeight, all),
+                    BlockSummary.of(stats, x, y + halfHeight, halfWidth, height - halfHeight, all),
+                    BlockSummary.of(stats, x + halfWidth, y + halfHeight, width - halfWidth, height - halfHeight, all));
+                BlockSummary scanned = BlockSummary.of(stats, x, y, width, height, all);
+                check(sameSummary(merged, scanned), "merge of " + width + "x" + height + " at " + x + "," + y);
+            }
+        }
+    }
+
+    // Every block the pyramid answers for matches a direct scan
+    static void pyramidSummaries() {
+        PixelPlanes planes = randomPlanes(301, 203, 3, 3);
+        BlockStatistics stats = BlockStatistics.compute(planes, false);
+        for (ErrorMethod method : new ErrorMethod[] { ErrorMethod.MAD, ErrorMethod.MAX_DIFF, ErrorMethod.ENTROPY }) {
+            SummaryPyramid pyramid = SummaryPyramid.build(stats, method, 2);
+            int found = comparePyramid(pyramid, stats, method, 0, 0, planes.getWidth(), planes.getHeight());
+            check(found > 1, method.getName() + " pyramid has blocks below the root");
+        }
+        check(SummaryPyramid.build(stats, ErrorMethod.VARIANCE, 2) == null, "no pyramid for table-only metrics");
+    }
+
+    // Walks the midpoint quadtree, returns how many blocks the pyramid held
+    private static int comparePyramid(SummaryPyramid pyramid, BlockStatistics stats, ErrorMethod method,
+                                      int x, int y, int width, int height) {
+        BlockSummary summary = pyramid.get(x, y, width, height);
+        if (summary == null) {
+            return 0;
+        }
+        BlockSummary scanned = BlockSummary.of(stats, x, y, width, height, method.getStatistics());
+        check(sameSummary(summary, scanned), method.getName() + " pyramid at " + x + "," + y + " " + width + "x" + height);
+        int halfWidth = width / 2;
+        int halfHeight = height / 2;
+        return 1 + comparePyramid(pyramid, stats, method, x, y, halfWidth, halfHeight)
+            + comparePyramid(pyramid, stats, method, x + halfWidth, y, width - halfWidth, halfHeight)
+            + comparePyramid(pyramid, stats, method, x, y + halfHeight, halfWidth, height - halfHeight)
+            + comparePyramid(pyramid, stats, method, x + halfWidth, y + halfHeight, width - halfWidth, height - halfHeight);
+    }
+
+    private static boolean sameSummary(BlockSummary a, BlockSummary b) {
+        Set<BlockSummary.Statistic> statistics = a.getStatistics();
+        if (a.getCount() != b.getCount() || a.getChannels() != b.getChannels() || !statistics.equals(b.getStatistics())) {
+            return false;
+        }
+        for (int c = 0; c < a.getChannels(); c++) {
+            if (statistics.contains(BlockSummary.Statistic.SUM) && a.getSum(c) != b.getSum(c)) return false;
+            if (statistics.contains(BlockSummary.Statistic.SQUARES) && a.getSumOfSquares(c) != b.getSumOfSquares(c)) return false;
+            if (statistics.contains(BlockSummary.Statistic.MIN_MAX)
+                && (a.getMin(c) != b.getMin(c) || a.getMax(c) != b.getMax(c))) return false;
+            if (statistics.contains(BlockSummary.Statistic.HISTOGRAM)
+                && !Arrays.equals(a.getHistogram(c), b.getHistogram(c))) return false;
+        }
+        return true;
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+
+    // Native-order int, as the cache headers are written
+    private static void overwriteInt(File file, long position, int value) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+            buffer.putInt(value).flip();
+            raf.getChannel().write(buffer, position);
+        }
+    }
+
+    static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+package src.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import src.error.BlockStatistics;
+import src.error.ErrorCalculator;
+import src.error.ErrorMethod;
+import src.model.Node;
+import src.model.Quadtree;
+import src.util.ImageUtil;
+import src.util.PixelPlanes;
+
+// Exact vs threshold-bounded error over the blocks a build evaluates
+public class EarlyExitBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int MIN_BLOCK = 4;
+
+    // Results land here so the JIT cannot drop the timed work
+    private static volatile double sink;
+
+    public static void main(String[] args) throws IOException {
+        String path = args.length > 0 ? args[0] : "test/raw/wall-e.jpg";
+        PixelPlanes planes = PixelPlanes.fromImage(ImageUtil.readImage(new File(path)));
+        BlockStatistics stats = BlockStatistics.compute(planes, true);
+        System.out.println("Image: " + path + " (" + planes.getWidth() + "x" + planes.getHeight() + ")");
+
+        System.out.println();
+        System.out.printf("%-10s %9s %8s %10s %10s %8s%n", "method", "threshold", "blocks", "exact ms", "bounded ms", "speedup");
+        for (ErrorMethod method : ErrorMethod.values()) {
+            double threshold = defaultThreshold(method);
+            Quadtree tree = new Quadtree(stats, MIN_BLOCK, threshold, method, false);
+
+            // Every splittable block the build looked at
+            List<Node> blocks = new ArrayList<>();
+            collect(tree.getRoot(), blocks);
+
+            // Warm up both paths and check they agree
+            for (Node block : blocks) {
+                boolean exact = evaluate(stats, block, method, threshold, false) > threshold;
+                boolean bounded = evaluate(stats, block, method, threshold, true) > threshold;
+                if (exact != bounded) {
+                    throw new IllegalStateException(method + " decisions differ at " + block.getX() + "," + block.getY());
+                }
+            }
+
+            double exactMs = time(stats, blocks, method, threshold, false);
+            double boundedMs = time(stats, blocks, method, threshold, true);
+            System.out.printf("%-10s %9.2f %8d %10.2f %10.2f %7.2fx%n",
+                method, threshold, blocks.size(), exactMs, boundedMs, exactMs / boundedMs);
+        }
+    }
+
+    private static double defaultThreshold(ErrorMethod method) {
+        switch (method) {
+            case ENTROPY: return 2;
+            case SSIM: return 0.1;
+            case VARIANCE: return 200;
+            default: return 20;
+        }
+    }
+
+    private static void collect(Node node, List<Node> blocks) {
+        if (node == null) return;
+        if (node.getWidth() > MIN_BLOCK && node.getHeight() > MIN_BLOCK) blocks.add(node);
+        if (!node.isLeaf()) {
+            collect(node.getTopLeft(), blocks);
+            collect(node.getTopRight(), blocks);
+            collect(node.getBottomLeft(), blocks);
+            collect(node.getBottomRight(), blocks);
+        }
+    }
+
+    private static double evaluate(BlockStatistics stats, Node block, ErrorMethod method, double threshold, boolean bounded) {
+        return bounded
+            ? ErrorCalculator.calculateError(stats, block.getX(), block.getY(), block.getWidth(), block.getHeight(), method, threshold)
+            : ErrorCalculator.calculateError(stats, block.getX(), block.getY(), block.getWidth(), block.getHeight(), method);
+    }
+
+    // Best of several rounds
+    private static double time(BlockStatistics stats, List<Node> blocks, ErrorMethod method, double threshold, boolean bounded) {
+        double best = Double.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            double checksum = 0;
+            for (Node block : blocks) checksum += evaluate(stats, block, method, threshold, bounded);
+            double ms = (System.nanoTime() - start) / 1e6;
+            sink = checksum;
+            best = Math.min(best, ms);
+        }
+        return best;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,73 @@
+package src.bench;
+
+import java.util.Random;
+import src.error.BlockKernels;
+import src.error.Kernels;
+import src.error.ScalarKernels;
+
+// Scalar vs selected kernels per block size
+public class KernelBenchmark {
+    private static final int SIZE = 2048;
+    private static final int ROUNDS = 5;
+
+    // Results land here so the JIT cannot drop the timed work
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        byte[] plane = new byte[SIZE * SIZE];
+        new Random(42).nextBytes(plane);
+
+        BlockKernels scalar = new ScalarKernels();
+        BlockKernels selected = Kernels.get();
+        System.out.println("Selected kernels: " + selected.getName());
+        if (selected instanceof ScalarKernels) {
+            System.out.println("Run with --add-modules jdk.incubator.vector to compare vector kernels");
+        }
+
+        String[] names = { "absoluteDeviation", "range", "minMax" };
+        int[] blockSizes = { 8, 32, 128, 512 };
+
+        System.out.println();
+        System.out.printf("%-18s %6s %12s %12s %8s%n", "kernel", "block", "scalar ms", "selected ms", "speedup");
+        for (int k = 0; k < names.length; k++) {
+            for (int block : blockSizes) {
+                // Warm up both paths
+                run(scalar, k, plane, block);
+                run(selected, k, plane, block);
+
+                double scalarMs = time(scalar, k, plane, block);
+                double selectedMs = time(selected, k, plane, block);
+                System.out.printf("%-18s %6d %12.2f %12.2f %7.2fx%n",
+                    names[k], block, scalarMs, selectedMs, scalarMs / selectedMs);
+            }
+        }
+    }
+
+    // Best of several rounds
+    private static double time(BlockKernels kernels, int kernel, byte[] plane, int block) {
+        double best = Double.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            long checksum = run(kernels, kernel, plane, block);
+            double ms = (System.nanoTime() - start) / 1e6;
+            sink = checksum;
+            best = Math.min(best, ms);
+        }
+        return best;
+    }
+
+    // Every block of the plane once
+    private static long run(BlockKernels kernels, int kernel, byte[] plane, int block) {
+        long checksum = 0;
+        for (int y = 0; y + block <= SIZE; y += block) {
+            for (int x = 0; x + block <= SIZE; x += block) {
+                switch (kernel) {
+                    case 0: checksum += kernels.absoluteDeviation(plane, SIZE, x, y, block, block, 127); break;
+                    case 1: checksum += kernels.range(plane, SIZE, x, y, block, block); break;
+                    default: checksum += kernels.minMax(plane, SIZE, x, y, block, block); break;
+                }
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,347 @@
+package src.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import src.compression.CompressionStats;
+import src.compression.ImageCompressor;
+import src.error.ErrorMethod;
+
+// End-to-end runs over test/raw checked against a stored baseline
+public class RegressionHarness {
+    private static final int[] BLOCK_SIZES = {4, 16};
+    // Differences below these floors are noise, not regressions
+    private static final double MIN_TIME_DELTA_MS = 20;
+    private static final long MIN_MEMORY_DELTA = 8L * 1024 * 1024;
+
+    private final File rawDir;
+    private final int warmups;
+    private final int rounds;
+    private boolean collectBeforeRounds;
+
+    public RegressionHarness(File rawDir, int warmups, int rounds) {
+        if (warmups < 1 || rounds < 1) {
+            throw new IllegalArgumentException("Warm-up runs and rounds must be positive");
+        }
+        this.rawDir = rawDir;
+        this.warmups = warmups;
+        this.rounds = rounds;
+    }
+
+    // One point of the parameter matrix and what it measured
+    public static class Result {
+        private final String key;
+        private final double wallMs;
+        private final long peakHeapBytes;
+        private final long allocatedBytes;
+        private final String outputHash;
+        private final Map<String, Double> phaseMs;
+
+        public Result(String key, double wallMs, long peakHeapBytes, long allocatedBytes, String outputHash,
+                Map<String, Double> phaseMs) {
+            this.key = key;
+            this.wallMs = wallMs;
+            this.peakHeapBytes = peakHeapBytes;
+            this.allocatedBytes = allocatedBytes;
+            this.outputHash = outputHash;
+            this.phaseMs = phaseMs;
+        }
+
+        public String getKey() { return key; }
+        public double getWallMs() { return wallMs; }
+        public long getPeakHeapBytes() { return peakHeapBytes; }
+        public long getAllocatedBytes() { return allocatedBytes; }
+        public String getOutputHash() { return outputHash; }
+        public Map<String, Double> getPhaseMs() { return phaseMs; }
+    }
+
+    // Full collection before each round, for absolute peaks that ignore earlier garbage
+    public void setCollectBeforeRounds(boolean collectBeforeRounds) {
+        this.collectBeforeRounds = collectBeforeRounds;
+    }
+
+    // Two thresholds per method, a fine and a coarse tree
+    static double[] thresholds(ErrorMethod method) {
+        switch (method) {
+            case ENTROPY: return new double[] {1, 3};
+            case SSIM: return new double[] {0.05, 0.2};
+            case VARIANCE: return new double[] {50, 400};
+            default: return new double[] {10, 40};
+        }
+    }
+
+    // Every image against every method, threshold and block size
+    public List<Result> runAll() throws IOException {
+        File[] images = rawDir.listFiles((dir, name) -> name.matches("(?i).+\\.(jpe?g|png|bmp)"));
+        if (images == null || images.length == 0) {
+            throw new IOException("No images found in " + rawDir);
+        }
+        Arrays.sort(images);
+
+        List<Result> results = new ArrayList<>();
+        File output = File.createTempFile("regression", ".png");
+        try {
+            for (File image : images) {
+                for (ErrorMethod method : ErrorMethod.values()) {
+                    for (double threshold : thresholds(method)) {
+                        for (int blockSize : BLOCK_SIZES) {
+                            Result result = run(image, method, threshold, blockSize, output);
+                            System.out.printf(Locale.ROOT, "%-48s %9.1f ms %8.1f MB peak %9.1f MB alloc%n",
+                                result.getKey(), result.getWallMs(), result.getPeakHeapBytes() / 1048576.0,
+                                result.getAllocatedBytes() / 1048576.0);
+                            results.add(result);
+                        }
+                    }
+                }
+            }
+        } finally {
+            output.delete();
+        }
+        return results;
+    }
+
+    // Minimum of each metric over the rounds, after the warm-up runs
+    public Result run(File image, ErrorMethod method, double threshold, int blockSize, File output) throws IOException {
+        String key = image.getName() + "|" + method + "|" + threshold + "|" + blockSize;
+        ImageCompressor compressor = new ImageCompressor(image.getPath(), output.getPath(), null,
+            method, threshold, blockSize, 0);
+
+        // Vector kernels allocate and run slowly until compiled
+        for (int w = 0; w < warmups; w++) {
+            compressor.compress();
+        }
+        String outputHash = hash(output);
+
+        double wallMs = Double.MAX_VALUE;
+        long peakHeap = Long.MAX_VALUE;
+        long allocated = Long.MAX_VALUE;
+        Map<String, Double> phases = null;
+        for (int r = 0; r < rounds; r++) {
+            if (collectBeforeRounds) {
+                System.gc();
+            }
+            // Peak counted above the heap in use when the round starts
+            resetPeaks();
+            long heapBefore = heapUsed();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+
+            CompressionStats stats = compressor.compress();
+
+            double ms = (System.nanoTime() - start) / 1e6;
+            allocated = Math.min(allocated, allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore);
+            peakHeap = Math.min(peakHeap, Math.max(0, peakHeap() - heapBefore));
+            if (!hash(output).equals(outputHash)) {
+                throw new IllegalStateException(key + " output differs between rounds");
+            }
+            if (ms < wallMs) {
+                wallMs = ms;
+                phases = new LinkedHashMap<>();
+                for (Map.Entry<String, Long> phase : stats.getPhaseNanos().entrySet()) {
+                    phases.put(phase.getKey(), phase.getValue() / 1e6);
+                }
+            }
+        }
+        return new Result(key, wallMs, peakHeap, allocated, outputHash, phases);
+    }
+
+    private static void resetPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    // Sum of per-pool peaks, an upper bound on the simultaneous peak
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static long heapUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getUsage() != null) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    // Bytes allocated by this thread and any pool threads, -1 when the JVM cannot tell
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean counters = (com.sun.management.ThreadMXBean) threads;
+        long[] ids = threads.getAllThreadIds();
+        long total = 0;
+        for (long bytes : counters.getThreadAllocatedBytes(ids)) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+
+    private static String hash(File file) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(Files.readAllBytes(file.toPath()));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : bytes) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    // Tab separated: key, wall ms, peak heap, allocated, hash, phase=ms list
+    public static void writeBaseline(File file, List<Result> results) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("# key\twallMs\tpeakHeapBytes\tallocatedBytes\toutputSha256\tphasesMs\n");
+            for (Result result : results) {
+                StringBuilder phases = new StringBuilder();
+                for (Map.Entry<String, Double> phase : result.getPhaseMs().entrySet()) {
+                    if (phases.length() > 0) phases.append(',');
+                    phases.append(phase.getKey()).append('=').append(String.format(Locale.ROOT, "%.3f", phase.getValue()));
+                }
+                writer.write(String.format(Locale.ROOT, "%s\t%.3f\t%d\t%d\t%s\t%s%n", result.getKey(), result.getWallMs(),
+                    result.getPeakHeapBytes(), result.getAllocatedBytes(), result.getOutputHash(), phases));
+            }
+        }
+    }
+
+    public static Map<String, Result> readBaseline(File file) throws IOException {
+        Map<String, Result> baseline = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 6) {
+                throw new IOException("Malformed baseline line: " + line);
+            }
+            Map<String, Double> phases = new LinkedHashMap<>();
+            for (String phase : fields[5].split(",")) {
+                int eq = phase.indexOf('=');
+                if (eq > 0) phases.put(phase.substring(0, eq), Double.parseDouble(phase.substring(eq + 1)));
+            }
+            baseline.put(fields[0], new Result(fields[0], Double.parseDouble(fields[1]), Long.parseLong(fields[2]),
+                Long.parseLong(fields[3]), fields[4], phases));
+        }
+        return baseline;
+    }
+
+    // Failures for changed outputs and time or memory beyond tolerance
+    public static List<String> compare(Map<String, Result> baseline, List<Result> results,
+            double timeTolerance, double memoryTolerance) {
+        List<String> failures = new ArrayList<>();
+        for (Result result : results) {
+            Result base = baseline.get(result.getKey());
+            if (base == null) {
+                System.out.println("No baseline for " + result.getKey() + ", skipped");
+                continue;
+            }
+            if (!base.getOutputHash().equals(result.getOutputHash())) {
+                failures.add(result.getKey() + ": output changed");
+            }
+            if (result.getWallMs() > base.getWallMs() * (1 + timeTolerance)
+                    && result.getWallMs() - base.getWallMs() > MIN_TIME_DELTA_MS) {
+                failures.add(String.format(Locale.ROOT, "%s: wall time %.1f ms vs %.1f ms%s", result.getKey(),
+                    result.getWallMs(), base.getWallMs(), slowestPhase(base, result)));
+            }
+            if (regressed(base.getPeakHeapBytes(), result.getPeakHeapBytes(), memoryTolerance)) {
+                failures.add(String.format(Locale.ROOT, "%s: peak heap %.1f MB vs %.1f MB", result.getKey(),
+                    result.getPeakHeapBytes() / 1048576.0, base.getPeakHeapBytes() / 1048576.0));
+            }
+            if (regressed(base.getAllocatedBytes(), result.getAllocatedBytes(), memoryTolerance)) {
+                failures.add(String.format(Locale.ROOT, "%s: allocated %.1f MB vs %.1f MB", result.getKey(),
+                    result.getAllocatedBytes() / 1048576.0, base.getAllocatedBytes() / 1048576.0));
+            }
+        }
+        return failures;
+    }
+
+    private static boolean regressed(long base, long current, double tolerance) {
+        if (base < 0 || current < 0) return false;
+        return current > base * (1 + tolerance) && current - base > MIN_MEMORY_DELTA;
+    }
+
+    // Phase that grew the most, to point at where the time went
+    private static String slowestPhase(Result base, Result result) {
+        String worst = null;
+        double worstDelta = 0;
+        for (Map.Entry<String, Double> phase : result.getPhaseMs().entrySet()) {
+            double delta = phase.getValue() - base.getPhaseMs().getOrDefault(phase.getKey(), 0.0);
+            if (delta > worstDelta) {
+                worst = phase.getKey();
+                worstDelta = delta;
+            }
+        }
+        return worst == null ? "" : String.format(Locale.ROOT, " (%s +%.1f ms)", worst, worstDelta);
+    }
+
+    // -raw DIR -baseline FILE -warmup N -rounds N -timeTolerance F -memoryTolerance F -update
+    public static void main(String[] args) throws IOException {
+        File rawDir = new File("test/raw");
+        File baselineFile = new File("test/regression-baseline.tsv");
+        int warmups = 3;
+        int rounds = 3;
+        double timeTolerance = 0.25;
+        double memoryTolerance = 0.25;
+        boolean update = false;
+        boolean collect = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-raw": rawDir = new File(args[++i]); break;
+                case "-baseline": baselineFile = new File(args[++i]); break;
+                case "-warmup": warmups = Integer.parseInt(args[++i]); break;
+                case "-rounds": rounds = Integer.parseInt(args[++i]); break;
+                case "-timeTolerance": timeTolerance = Double.parseDouble(args[++i]); break;
+                case "-memoryTolerance": memoryTolerance = Double.parseDouble(args[++i]); break;
+                case "-update": update = true; break;
+                case "-gc": collect = true; break;
+                default:
+                    System.err.println("Usage: RegressionHarness [-raw DIR] [-baseline FILE] [-warmup N] [-rounds N] "
+                        + "[-timeTolerance F] [-memoryTolerance F] [-update] [-gc]");
+                    System.exit(2);
+                    return;
+            }
+        }
+
+        RegressionHarness harness = new RegressionHarness(rawDir, warmups, rounds);
+        harness.setCollectBeforeRounds(collect);
+        List<Result> results = harness.runAll();
+        if (update || !baselineFile.exists()) {
+            writeBaseline(baselineFile, results);
+            System.out.println("Baseline written to " + baselineFile + " (" + results.size() + " runs)");
+            return;
+        }
+
+        List<String> failures = compare(readBaseline(baselineFile), results, timeTolerance, memoryTolerance);
+        if (failures.isEmpty()) {
+            System.out.println("No regressions in " + results.size() + " runs");
+            return;
+        }
+        System.out.println(failures.size() + " regressions:");
+        for (String failure : failures) {
+            System.out.println("  " + failure);
+        }
+        System.exit(1);
+    }
+}
\ No newline at end of file
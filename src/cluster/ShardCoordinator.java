@@ -0,0 +1,419 @@
+package src.cluster;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import src.error.ErrorMetric;
+import src.error.ErrorMetrics;
+import src.util.ImageUtil;
+
+// Spreads a batch or the tiles of one image over worker JVMs
+public class ShardCoordinator {
+    private static final Pattern NODE_COUNT = Pattern.compile("\"nodeCount\":(\\d+)");
+    public static final long DEFAULT_JOB_TIMEOUT_MS = 10 * 60 * 1000;
+
+    // Kills workers that miss their deadline, shared by every coordinator
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "shard-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int workerCount;
+    private final int maxAttempts;
+    private final long jobTimeoutMs;
+    private final List<String> workerCommand;
+
+    // Cluster counters
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger retries = new AtomicInteger();
+    private final AtomicInteger restarts = new AtomicInteger();
+    private final AtomicInteger timeouts = new AtomicInteger();
+    private long wallTimeMs;
+    private long inputBytes;
+
+    // One unit of work for a worker
+    public static class Job {
+        private final String id;
+        private final String request;
+        private final long inputBytes;
+        private int attempts;
+        private String result;
+        private String error;
+
+        Job(String id, String request, long inputBytes) {
+            this.id = id;
+            this.request = request;
+            this.inputBytes = inputBytes;
+        }
+
+        public String getId() { return id; }
+        public int getAttempts() { return attempts; }
+        public String getResult() { return result; }
+        public String getError() { return error; }
+        public boolean isDone() { return result != null; }
+    }
+
+    public ShardCoordinator(int workerCount, int maxAttempts) {
+        this(workerCount, maxAttempts, DEFAULT_JOB_TIMEOUT_MS);
+    }
+
+    // Workers that hold a job past jobTimeoutMs are killed and the job retried
+    public ShardCoordinator(int workerCount, int maxAttempts, long jobTimeoutMs) {
+        if (workerCount < 1 || maxAttempts < 1 || jobTimeoutMs < 1) {
+            throw new IllegalArgumentException("Worker count, attempts and job timeout must be positive");
+        }
+        this.workerCount = workerCount;
+        this.maxAttempts = maxAttempts;
+        this.jobTimeoutMs = jobTimeoutMs;
+
+        // Same java, classpath and JVM flags as this process
+        workerCommand = new ArrayList<>();
+        workerCommand.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!arg.startsWith("-agentlib") && !arg.startsWith("-javaagent")) {
+                workerCommand.add(arg);
+            }
+        }
+        workerCommand.add("-cp");
+        workerCommand.add(System.getProperty("java.class.path"));
+        workerCommand.add(Worker.class.getName());
+    }
+
+    // One output file per input image, named <index>-<input name>
+    public List<Job> compressBatch(List<String> inputs, File outputDir, ErrorMetric method, double threshold,
+                                   int minBlockSize, double targetRatio) throws IOException {
+        Files.createDirectories(outputDir.toPath());
+
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            File input = new File(inputs.get(i));
+            // Job index prefix keeps same-named inputs from different directories apart
+            String output = new File(outputDir, i + "-" + input.getName()).getPath();
+            String request = String.join("\t", Worker.JOB, String.valueOf(i), input.getPath(), output,
+                String.valueOf(method.getId()), String.valueOf(threshold), String.valueOf(minBlockSize),
+                String.valueOf(targetRatio));
+            jobs.add(new Job(String.valueOf(i), request, input.length()));
+        }
+
+        run(jobs);
+        return jobs;
+    }
+
+    // Workers decode and compress disjoint tiles, coordinator stitches
+    public List<Job> compressTiled(String inputPath, String outputPath, int tileSize, ErrorMetric method,
+                                   double threshold, int minBlockSize) throws IOException {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        File input = new File(inputPath);
+        int[] size = ImageUtil.probeDimensions(input);
+        int width = size[0];
+        int height = size[1];
+
+        Path tileDir = Files.createTempDirectory("quadtree-tiles-");
+        try {
+            List<Job> jobs = new ArrayList<>();
+            List<int[]> origins = new ArrayList<>();
+            for (int ty = 0; ty < height; ty += tileSize) {
+                for (int tx = 0; tx < width; tx += tileSize) {
+                    String id = String.valueOf(jobs.size());
+                    int w = Math.min(tileSize, width - tx);
+                    int h = Math.min(tileSize, height - ty);
+                    String request = String.join("\t", Worker.TILE, id, input.getPath(),
+                        tileDir.resolve(id + ".png").toString(), String.valueOf(tx), String.valueOf(ty),
+                        String.valueOf(w), String.valueOf(h), String.valueOf(method.getId()),
+                        String.valueOf(threshold), String.valueOf(minBlockSize));
+                    jobs.add(new Job(id, request, (long) w * h * 3));
+                    origins.add(new int[] { tx, ty });
+                }
+            }
+
+            run(jobs);
+
+            for (Job job : jobs) {
+                if (!job.isDone()) {
+                    throw new IOException("Tile " + job.getId() + " failed: " + job.getError());
+                }
+            }
+
+            BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = result.createGraphics();
+            for (int i = 0; i < jobs.size(); i++) {
+                BufferedImage tile = ImageUtil.readImage(tileDir.resolve(jobs.get(i).getId() + ".png").toFile());
+                g.drawImage(tile, origins.get(i)[0], origins.get(i)[1], null);
+            }
+            g.dispose();
+
+            String format = outputPath.substring(outputPath.lastIndexOf('.') + 1).toLowerCase();
+            if (!ImageIO.write(result, format, new File(outputPath))) {
+                throw new IOException("No writer for format " + format);
+            }
+            return jobs;
+        } finally {
+            try (Stream<Path> files = Files.list(tileDir)) {
+                for (Path file : (Iterable<Path>) files::iterator) Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(tileDir);
+        }
+    }
+
+    // Shared queue drained by one driver thread per worker
+    public void run(List<Job> jobs) {
+        LinkedBlockingQueue<Job> pending = new LinkedBlockingQueue<>(jobs);
+        AtomicInteger remaining = new AtomicInteger(jobs.size());
+        long start = System.currentTimeMillis();
+
+        List<Thread> drivers = new ArrayList<>();
+        for (int i = 0; i < Math.min(workerCount, jobs.size()); i++) {
+            Thread driver = new Thread(() -> drive(pending, remaining), "shard-driver-" + i);
+            drivers.add(driver);
+            driver.start();
+        }
+
+        try {
+            for (Thread driver : drivers) driver.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Coordinator interrupted", e);
+        }
+
+        wallTimeMs += System.currentTimeMillis() - start;
+        for (Job job : jobs) inputBytes += job.inputBytes;
+    }
+
+    private void drive(LinkedBlockingQueue<Job> pending, AtomicInteger remaining) {
+        WorkerProcess worker = null;
+        try {
+            while (remaining.get() > 0) {
+                Job job = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (job == null) continue;
+
+                job.attempts++;
+                try {
+                    if (worker == null) {
+                        worker = new WorkerProcess(workerCommand, jobTimeoutMs);
+                    }
+                    String[] reply = worker.send(job.request, jobTimeoutMs);
+                    if (Worker.DONE.equals(reply[0])) {
+                        job.result = reply[2];
+                        completed.incrementAndGet();
+                    } else {
+                        // Compression error, not a crash
+                        job.error = reply[2];
+                        failed.incrementAndGet();
+                    }
+                    remaining.decrementAndGet();
+                } catch (IOException e) {
+                    // Worker died or hung mid-job, replace it and requeue
+                    if (worker != null) {
+                        if (worker.timedOut) timeouts.incrementAndGet();
+                        worker.destroy();
+                        worker = null;
+                        restarts.incrementAndGet();
+                    }
+                    if (job.attempts < maxAttempts) {
+                        retries.incrementAndGet();
+                        pending.add(job);
+                    } else {
+                        job.error = "Worker crashed " + job.attempts + " times: " + e.getMessage();
+                        failed.incrementAndGet();
+                        remaining.decrementAndGet();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (worker != null) worker.close();
+        }
+    }
+
+    // A worker JVM and its protocol pipes
+    private static class WorkerProcess {
+        private final Process process;
+        private final Writer in;
+        private final BufferedReader out;
+        private volatile boolean timedOut;
+
+        WorkerProcess(List<String> command, long timeoutMs) throws IOException {
+            process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            in = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+
+            String ready = readLine(timeoutMs);
+            if (!Worker.READY.equals(ready)) {
+                destroy();
+                throw new IOException(timedOut ? "Worker did not start within " + timeoutMs + " ms"
+                    : "Worker failed to start");
+            }
+        }
+
+        String[] send(String request, long timeoutMs) throws IOException {
+            in.write(request);
+            in.write('\n');
+            in.flush();
+
+            String line = readLine(timeoutMs);
+            if (timedOut) {
+                throw new IOException("Worker exceeded " + timeoutMs + " ms");
+            }
+            if (line == null) {
+                throw new IOException("Worker exited with " + waitForExit());
+            }
+            String[] reply = line.split("\t", 3);
+            if (reply.length < 3) {
+                throw new IOException("Malformed worker reply: " + line);
+            }
+            return reply;
+        }
+
+        // Killing the process ends a blocked read with EOF or an error
+        private String readLine(long timeoutMs) throws IOException {
+            ScheduledFuture<?> deadline = WATCHDOG.schedule(() -> {
+                timedOut = true;
+                destroy();
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+            try {
+                return out.readLine();
+            } catch (IOException e) {
+                if (timedOut) return null;
+                throw e;
+            } finally {
+                deadline.cancel(false);
+            }
+        }
+
+        private String waitForExit() {
+            try {
+                return process.waitFor(5, TimeUnit.SECONDS) ? "code " + process.exitValue() : "no exit code";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "interrupted";
+            }
+        }
+
+        // EOF on stdin ends the worker loop
+        void close() {
+            try {
+                in.close();
+                if (!process.waitFor(10, TimeUnit.SECONDS)) destroy();
+            } catch (IOException e) {
+                destroy();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                destroy();
+            }
+        }
+
+        void destroy() {
+            process.destroyForcibly();
+        }
+    }
+
+    // Cluster-wide throughput
+    public String getSummary() {
+        double seconds = Math.max(wallTimeMs, 1) / 1000.0;
+        StringBuilder sb = new StringBuilder();
+        sb.append("===== CLUSTER STATISTICS =====\n");
+        sb.append("Workers: ").append(workerCount).append("\n");
+        sb.append("Jobs completed: ").append(completed.get()).append("\n");
+        sb.append("Jobs failed: ").append(failed.get()).append("\n");
+        sb.append("Retries: ").append(retries.get()).append(" (worker restarts: ").append(restarts.get())
+          .append(", timeouts: ").append(timeouts.get()).append(")\n");
+        sb.append("Wall time: ").append(wallTimeMs).append(" ms\n");
+        sb.append(String.format(Locale.ROOT, "Throughput: %.2f jobs/s, %.2f MB/s input%n",
+            completed.get() / seconds, inputBytes / 1048576.0 / seconds));
+        return sb.toString();
+    }
+
+    // Sum of nodeCount over finished jobs
+    public static long totalNodes(List<Job> jobs) {
+        long total = 0;
+        for (Job job : jobs) {
+            if (job.isDone()) {
+                Matcher m = NODE_COUNT.matcher(job.getResult());
+                if (m.find()) total += Long.parseLong(m.group(1));
+            }
+        }
+        return total;
+    }
+
+    public int getCompleted() { return completed.get(); }
+    public int getFailed() { return failed.get(); }
+    public int getRetries() { return retries.get(); }
+    public int getTimeouts() { return timeouts.get(); }
+    public long getWallTimeMs() { return wallTimeMs; }
+
+    // -workers N -method M -threshold T -minBlock B -ratio R -timeout MS -out DIR images...
+    // -workers N -method M -threshold T -minBlock B -tile S -timeout MS -out FILE image
+    public static void main(String[] args) throws IOException {
+        int workers = Runtime.getRuntime().availableProcessors();
+        int methodId = 1;
+        double threshold = 50;
+        int minBlockSize = 4;
+        double targetRatio = 0;
+        int tileSize = 0;
+        long timeoutMs = DEFAULT_JOB_TIMEOUT_MS;
+        String out = null;
+        List<String> inputs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-workers": workers = Integer.parseInt(args[++i]); break;
+                case "-method": methodId = Integer.parseInt(args[++i]); break;
+                case "-threshold": threshold = Double.parseDouble(args[++i]); break;
+                case "-minBlock": minBlockSize = Integer.parseInt(args[++i]); break;
+                case "-ratio": targetRatio = Double.parseDouble(args[++i]); break;
+                case "-tile": tileSize = Integer.parseInt(args[++i]); break;
+                case "-timeout": timeoutMs = Long.parseLong(args[++i]); break;
+                case "-out": out = args[++i]; break;
+                default: inputs.add(args[i]);
+            }
+        }
+
+        ErrorMetric method = ErrorMetrics.getById(methodId);
+        if (method == null || out == null || inputs.isEmpty() || (tileSize > 0 && inputs.size() != 1)) {
+            System.err.println("Usage: ShardCoordinator [-workers N] [-method M] [-threshold T] [-minBlock B]"
+                + " [-ratio R] [-timeout MS] -out DIR images...");
+            System.err.println("       ShardCoordinator [-workers N] [-method M] [-threshold T] [-minBlock B]"
+                + " [-timeout MS] -tile S -out FILE image");
+            System.exit(2);
+            return;
+        }
+
+        ShardCoordinator coordinator = new ShardCoordinator(workers, 3, timeoutMs);
+        List<Job> jobs = tileSize > 0
+            ? coordinator.compressTiled(inputs.get(0), out, tileSize, method, threshold, minBlockSize)
+            : coordinator.compressBatch(inputs, new File(out), method, threshold, minBlockSize, targetRatio);
+
+        for (Job job : jobs) {
+            System.out.println(job.getId() + ": " + (job.isDone() ? job.getResult() : "FAILED " + job.getError()));
+        }
+        System.out.println("Total nodes: " + totalNodes(jobs));
+        System.out.print(coordinator.getSummary());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,99 @@
+package src.cluster;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import javax.imageio.ImageIO;
+import src.compression.CompressionStats;
+import src.compression.ImageCompressor;
+import src.error.BlockStatistics;
+import src.error.ErrorCalculator;
+import src.error.ErrorMetric;
+import src.error.ErrorMetrics;
+import src.model.Quadtree;
+import src.util.ImageUtil;
+import src.util.PixelPlanes;
+
+// Line protocol worker process
+public class Worker {
+    // Tab-separated request and reply lines
+    static final String JOB = "JOB";
+    static final String TILE = "TILE";
+    static final String DONE = "DONE";
+    static final String FAIL = "FAIL";
+    static final String READY = "READY";
+
+    public static void main(String[] args) throws Exception {
+        // Keep stdout for the protocol only
+        PrintStream protocol = new PrintStream(new FileOutputStream(FileDescriptor.out), true, "UTF-8");
+        System.setOut(System.err);
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+        protocol.println(READY);
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isEmpty()) continue;
+
+            String[] f = line.split("\t");
+            String id = f.length > 1 ? f[1] : "?";
+            try {
+                String result;
+                if (JOB.equals(f[0])) {
+                    result = runJob(f);
+                } else if (TILE.equals(f[0])) {
+                    result = runTile(f);
+                } else {
+                    throw new IllegalArgumentException("Unknown request " + f[0]);
+                }
+                protocol.println(DONE + "\t" + id + "\t" + result);
+            } catch (Exception e) {
+                protocol.println(FAIL + "\t" + id + "\t" + String.valueOf(e.getMessage()).replace('\t', ' ').replace('\n', ' '));
+            }
+        }
+    }
+
+    // JOB id input output method threshold minBlockSize targetRatio
+    private static String runJob(String[] f) throws Exception {
+        ImageCompressor compressor = new ImageCompressor(
+            f[2], f[3], null, method(f[4]), Double.parseDouble(f[5]), Integer.parseInt(f[6]), Double.parseDouble(f[7]));
+        CompressionStats stats = compressor.compress();
+        return stats.toJson();
+    }
+
+    // TILE id input output x y width height method threshold minBlockSize
+    private static String runTile(String[] f) throws Exception {
+        long start = System.currentTimeMillis();
+        int x = Integer.parseInt(f[4]);
+        int y = Integer.parseInt(f[5]);
+        int width = Integer.parseInt(f[6]);
+        int height = Integer.parseInt(f[7]);
+        ErrorMetric method = method(f[8]);
+
+        // Decode only this tile
+        BufferedImage region = ImageUtil.readRegion(new File(f[2]), x, y, width, height);
+        BlockStatistics stats = BlockStatistics.compute(PixelPlanes.fromImage(region), ErrorCalculator.needsSquares(method));
+        Quadtree tree = new Quadtree(stats, Integer.parseInt(f[10]), Double.parseDouble(f[9]), method, false);
+
+        BufferedImage tile = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        tree.renderInto(((DataBufferInt) tile.getRaster().getDataBuffer()).getData(), width, 0, 0);
+        ImageIO.write(tile, "png", new File(f[3]));
+
+        return "{\"nodeCount\":" + tree.getNodeCount()
+            + ",\"treeDepth\":" + tree.getDepth()
+            + ",\"executionTimeMs\":" + (System.currentTimeMillis() - start) + "}";
+    }
+
+    private static ErrorMetric method(String id) {
+        ErrorMetric method = ErrorMetrics.getById(Integer.parseInt(id));
+        if (method == null) {
+            throw new IllegalArgumentException("Unknown error method " + id);
+        }
+        return method;
+    }
+}
\ No newline at end of file
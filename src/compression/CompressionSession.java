@@ -0,0 +1,84 @@
+package src.compression;
+
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import src.error.BlockStatistics;
+import src.error.ErrorCalculator;
+import src.error.ErrorMetric;
+import src.model.Quadtree;
+import src.util.PixelPlanes;
+
+// Decoded planes and statistics kept resident across parameter changes
+public class CompressionSession {
+    private final File inputFile;
+    private final PixelPlanes planes;
+    private BlockStatistics stats;
+    private final long decodeMs;
+    private long statsMs;
+
+    // Last full build, higher thresholds and larger blocks for the same metric prune it
+    private Quadtree built;
+    private Quadtree current;
+    private boolean lastPruned;
+    private long lastRunNanos;
+
+    public CompressionSession(File inputFile) throws IOException {
+        this.inputFile = inputFile;
+        long start = System.nanoTime();
+        this.planes = ImageCompressor.readPlanes(inputFile);
+        this.decodeMs = (System.nanoTime() - start) / 1000000;
+    }
+
+    // Tree for these parameters, from resident statistics only
+    public Quadtree run(ErrorMetric metric, double threshold, int minBlockSize) {
+        if (threshold <= 0 || minBlockSize < 1) {
+            throw new IllegalArgumentException("Threshold and minimum block size must be positive");
+        }
+        long start = System.nanoTime();
+
+        boolean canPrune = built != null && built.getErrorMethod() == metric
+            && minBlockSize >= built.getMinBlockSize() && threshold >= built.getThreshold();
+        if (canPrune) {
+            current = threshold == built.getThreshold() && minBlockSize == built.getMinBlockSize()
+                ? built : built.prune(threshold, minBlockSize);
+        } else {
+            current = new Quadtree(statistics(metric), minBlockSize, threshold, metric, false);
+            built = current;
+        }
+
+        lastPruned = canPrune;
+        lastRunNanos = System.nanoTime() - start;
+        return current;
+    }
+
+    // Squares are added the first time a metric reads them
+    private BlockStatistics statistics(ErrorMetric metric) {
+        boolean squares = ErrorCalculator.needsSquares(metric);
+        if (stats == null || (squares && !stats.hasSquares())) {
+            long start = System.nanoTime();
+            stats = BlockStatistics.compute(planes, squares);
+            statsMs += (System.nanoTime() - start) / 1000000;
+        }
+        return stats;
+    }
+
+    // Render the current tree, returns milliseconds spent
+    public long save(String outputPath) throws IOException {
+        if (current == null) {
+            throw new IllegalStateException("Nothing compressed yet");
+        }
+        long start = System.nanoTime();
+        String format = outputPath.substring(outputPath.lastIndexOf('.') + 1);
+        ImageIO.write(current.compressImage(), format, new File(outputPath));
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    public File getInputFile() { return inputFile; }
+    public PixelPlanes getPlanes() { return planes; }
+    public Quadtree getCurrent() { return current; }
+    public boolean wasPruned() { return lastPruned; }
+    public double getLastRunMs() { return lastRunNanos / 1e6; }
+    public long getDecodeMs() { return decodeMs; }
+    public long getStatsMs() { return statsMs; }
+}
\ No newline at end of file
@@ -1,11 +1,25 @@
 package src.compression;
 
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
 public class CompressionStats {
     private long originalFileSize;
     private long compressedFileSize;
     private int treeDepth;
     private int nodeCount;
     private long executionTimeMs;
+    private int tileCount;
+    private int tileSize;
+    private int minTileNodes;
+    private int maxTileNodes;
+    private int paletteSize;
+    private int distinctLeafColors;
+    private int leafCount;
+    private double paletteRmse;
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final Map<String, Long> outputNanos = new LinkedHashMap<>();
     
     // Store compression stats
     public CompressionStats(long originalFileSize, long compressedFileSize, int treeDepth, int nodeCount, long executionTimeMs) {
@@ -16,6 +30,32 @@ public class CompressionStats {
         this.executionTimeMs = executionTimeMs;
     }
     
+    // Per-tile rollup for tiled runs
+    public void setTileStats(int tileCount, int tileSize, int minTileNodes, int maxTileNodes) {
+        this.tileCount = tileCount;
+        this.tileSize = tileSize;
+        this.minTileNodes = minTileNodes;
+        this.maxTileNodes = maxTileNodes;
+    }
+    
+    // Leaf palette size and the error it added over exact leaf colors
+    public void setPaletteStats(int paletteSize, int distinctLeafColors, int leafCount, double paletteRmse) {
+        this.paletteSize = paletteSize;
+        this.distinctLeafColors = distinctLeafColors;
+        this.leafCount = leafCount;
+        this.paletteRmse = paletteRmse;
+    }
+    
+    // Wall time of one pipeline phase, repeated phases accumulate
+    public void addPhaseTime(String phase, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+    }
+    
+    // Encode time of one output file, outputs overlap in time
+    public void addOutputTime(String output, long nanos) {
+        outputNanos.put(output, nanos);
+    }
+    
     // Calculate compression ratio
     public double getCompressionPercentage() {
         if (originalFileSize == 0) {
@@ -25,8 +65,16 @@ public class CompressionStats {
     }
     
     // Stats getters
+    public long getOriginalFileSize() { return originalFileSize; }
+    public long getCompressedFileSize() { return compressedFileSize; }
     public int getTreeDepth() { return treeDepth; }
     public int getNodeCount() { return nodeCount; }
+    public long getExecutionTimeMs() { return executionTimeMs; }
+    public int getTileCount() { return tileCount; }
+    public int getPaletteSize() { return paletteSize; }
+    public double getPaletteRmse() { return paletteRmse; }
+    public Map<String, Long> getPhaseNanos() { return phaseNanos; }
+    public Map<String, Long> getOutputNanos() { return outputNanos; }
     
     // Format time display
     private String formatTime() {
@@ -60,7 +108,64 @@ public class CompressionStats {
         sb.append("Compression percentage: ").append(String.format("%.2f%%", getCompressionPercentage() * 100)).append("\n");
         sb.append("Quadtree depth: ").append(treeDepth).append("\n");
         sb.append("Number of nodes: ").append(nodeCount).append("\n");
+        if (tileCount > 0) {
+            sb.append("Tiles: ").append(tileCount).append(" of ").append(tileSize).append("x").append(tileSize)
+              .append(" px, ").append(minTileNodes).append("-").append(maxTileNodes).append(" nodes per tile\n");
+        }
+        if (paletteSize > 0) {
+            sb.append("Palette: ").append(paletteSize).append(" colors from ").append(distinctLeafColors)
+              .append(" distinct over ").append(leafCount).append(" leaves, added RMSE ")
+              .append(String.format("%.3f", paletteRmse)).append("\n");
+        }
+        if (outputNanos.size() > 1) {
+            sb.append("Output encoding:");
+            for (Map.Entry<String, Long> output : outputNanos.entrySet()) {
+                sb.append(" ").append(output.getKey()).append(" ").append(output.getValue() / 1000000).append(" ms");
+            }
+            sb.append("\n");
+        }
         
         return sb.toString();
     }
+    
+    // Machine-readable report
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        sb.append("\"originalFileSize\":").append(originalFileSize).append(",");
+        sb.append("\"compressedFileSize\":").append(compressedFileSize).append(",");
+        sb.append("\"compressionPercentage\":").append(String.format(Locale.ROOT, "%.4f", getCompressionPercentage())).append(",");
+        sb.append("\"treeDepth\":").append(treeDepth).append(",");
+        sb.append("\"nodeCount\":").append(nodeCount).append(",");
+        sb.append("\"executionTimeMs\":").append(executionTimeMs);
+        if (tileCount > 0) {
+            sb.append(",\"tileCount\":").append(tileCount);
+            sb.append(",\"tileSize\":").append(tileSize);
+            sb.append(",\"minTileNodes\":").append(minTileNodes);
+            sb.append(",\"maxTileNodes\":").append(maxTileNodes);
+        }
+        if (paletteSize > 0) {
+            sb.append(",\"paletteSize\":").append(paletteSize);
+            sb.append(",\"distinctLeafColors\":").append(distinctLeafColors);
+            sb.append(",\"leafCount\":").append(leafCount);
+            sb.append(",\"paletteRmse\":").append(String.format(Locale.ROOT, "%.4f", paletteRmse));
+        }
+        appendMillis(sb, "phasesMs", phaseNanos);
+        appendMillis(sb, "outputsMs", outputNanos);
+        sb.append("}");
+        
+        return sb.toString();
+    }
+    
+    private static void appendMillis(StringBuilder sb, String name, Map<String, Long> nanos) {
+        if (nanos.isEmpty()) return;
+        sb.append(",\"").append(name).append("\":{");
+        String separator = "";
+        for (Map.Entry<String, Long> entry : nanos.entrySet()) {
+            sb.append(separator).append("\"").append(entry.getKey()).append("\":")
+              .append(String.format(Locale.ROOT, "%.3f", entry.getValue() / 1e6));
+            separator = ",";
+        }
+        sb.append("}");
+    }
 }
\ No newline at end of file
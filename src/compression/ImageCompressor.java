@@ -2,30 +2,73 @@ package src.compression;
 
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.imageio.ImageIO;
-import src.error.ErrorMethod;
+import src.error.BlockStatistics;
+import src.error.ErrorCalculator;
+import src.error.ErrorMetric;
+import src.error.OffHeapStatistics;
+import src.model.LeafPalette;
+import src.model.LinearQuadtree;
 import src.model.Quadtree;
+import src.model.TiledQuadtree;
+import src.model.YCbCrQuadtree;
 import src.util.GifGenerator;
+import src.util.ImagePyramid;
+import src.util.ImageUtil;
+import src.util.MemoryBudget;
+import src.util.CancellationToken;
+import src.util.PixelPlanes;
+import src.util.ProgressListener;
+import src.util.ProgressTracker;
 
 public class ImageCompressor {
     private String inputPath;
     private String outputPath;
     private String gifPath;
-    private ErrorMethod errorMethod;
+    private String treePath;
+    private ErrorMetric errorMethod;
     private double threshold;
     private int minBlockSize;
     private double targetCompressionRatio;
     private boolean generateGif;
     private Quadtree quadtree;
+    private StatsCache cache;
+    private int paletteSize;
+    private LeafPalette palette;
+    private boolean offHeapStats;
+    private File offHeapDirectory;
+    private MemoryBudget memoryBudget;
+    private boolean ycbcrMode;
+    private double chromaThreshold;
+    private int chromaMinBlockSize;
+    private int tileSize;
+    private boolean adaptiveSplits;
+    private int outputWidth;
+    private int outputHeight;
+    private ProgressListener progressListener;
+    private CancellationToken cancellationToken;
     
     // Constructor
     public ImageCompressor(
             String inputPath, 
             String outputPath, 
             String gifPath,
-            ErrorMethod errorMethod, 
+            ErrorMetric errorMethod, 
             double threshold, 
             int minBlockSize,
             double targetCompressionRatio) {
@@ -42,6 +85,10 @@ public class ImageCompressor {
     // Main compression process
     public CompressionStats compress() throws IOException {
         long startTime = System.currentTimeMillis();
+        Map<String, Long> phases = new LinkedHashMap<>();
+        long mark = System.nanoTime();
+        ProgressTracker progress = new ProgressTracker(progressListener, cancellationToken);
+        progress.startPhase("decode", 0);
         
         // Load image
         File inputFile = new File(inputPath);
@@ -49,49 +96,371 @@ public class ImageCompressor {
             throw new IOException("Input file does not exist: " + inputPath);
         }
         
-        BufferedImage original = ImageIO.read(inputFile);
+        // Reuse cached planes and statistics
+        // Off-heap runs keep full resolution, so their planes are cached apart from downscaled ones
+        String cacheKey = cache != null ? StatsCache.hashFile(inputFile) + (offHeapStats ? "-full" : "") : null;
+        boolean needSquares = ErrorCalculator.needsSquares(errorMethod) || adaptiveSplits;
+        PixelPlanes planes = cache != null ? cache.loadPlanes(cacheKey) : null;
         
-        // Scale large images
-        if (original.getWidth() * original.getHeight() > 10000000) { // > 10MP
-            double scale = Math.sqrt(10000000.0 / (original.getWidth() * original.getHeight()));
-            int newWidth = (int)(original.getWidth() * scale);
-            int newHeight = (int)(original.getHeight() * scale);
-            System.out.println("Image is very large, scaling down for processing...");
-            original = scaleImage(original, newWidth, newHeight);
+        if (planes == null) {
+            planes = readPlanes(inputFile, !offHeapStats);
+            
+            if (cache != null) {
+                cache.storePlanes(cacheKey, planes);
+            }
+        }
+        mark = lap(phases, "decode", mark);
+        long pixels = (long) planes.getWidth() * planes.getHeight();
+        
+        // Gray input runs every phase on one plane, and has no chroma to subsample
+        boolean ycbcr = ycbcrMode && planes.getChannels() == 3;
+        if (planes.getChannels() == 1) {
+            System.out.println("Grayscale image detected, compressing a single channel");
+        }
+        
+        // Tiles only when planes, statistics and output alone would not fit the memory budget,
+        // a worst-case tree of minimum-size leaves would tile nearly every large image
+        MemoryBudget budget = memoryBudget != null ? memoryBudget : MemoryBudget.fromSystem();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int effectiveTileSize = tileSize;
+        long buildBytes = MemoryBudget.buildBytes(
+            planes.getWidth(), planes.getHeight(), planes.getChannels(), needSquares);
+        if (offHeapStats) {
+            // Integral tables live outside the heap
+            buildBytes -= MemoryBudget.statsBytes(planes.getWidth(), planes.getHeight(), planes.getChannels(), needSquares);
+        }
+        if (effectiveTileSize == 0 && !ycbcr && !budget.fits(buildBytes)) {
+            effectiveTileSize = budget.tileSizeFor(planes.getWidth(), planes.getHeight(), planes.getChannels(),
+                needSquares, minBlockSize, threads);
+            System.out.println("Image exceeds memory budget, compressing in " + effectiveTileSize + "px tiles");
         }
         
+        // YCbCr trees compute their own plane statistics
+        progress.startPhase("stats", 0);
+        boolean needStats = (!ycbcr && effectiveTileSize == 0) || targetCompressionRatio > 0;
+        BlockStatistics stats = null;
+        if (cache != null && needStats) {
+            stats = offHeapStats ? cache.mapStatistics(cacheKey, planes, needSquares)
+                : cache.loadStatistics(cacheKey, planes, needSquares);
+        }
+        if (stats == null && needStats) {
+            stats = offHeapStats ? OffHeapStatistics.compute(planes, needSquares, offHeapDirectory)
+                : BlockStatistics.compute(planes, needSquares);
+            if (cache != null) {
+                cache.storeStatistics(cacheKey, stats);
+            }
+        }
+        mark = lap(phases, "stats", mark);
+        
         // Auto-adjust threshold
         if (targetCompressionRatio > 0) {
-            threshold = findOptimalThreshold(original, targetCompressionRatio);
+            threshold = findOptimalThreshold(stats, targetCompressionRatio, progress);
+            mark = lap(phases, "search", mark);
         }
         
         // Create quadtree
-        this.quadtree = new Quadtree(original, minBlockSize, threshold, errorMethod, generateGif);
-        BufferedImage compressed = quadtree.compressImage();
+        BufferedImage compressed;
+        int treeDepth;
+        int nodeCount;
+        TiledQuadtree tiled = null;
+        palette = null;
+        if (paletteSize > 0 && (effectiveTileSize > 0 || ycbcr)) {
+            System.out.println("Palettes apply to a single whole-image tree, skipping palette");
+        }
+        progress.startPhase("tree", ycbcr && effectiveTileSize == 0
+            ? pixels + 2L * ((planes.getWidth() + 1) / 2) * ((planes.getHeight() + 1) / 2) : pixels);
+        if (effectiveTileSize > 0) {
+            if (generateGif) {
+                System.out.println("Tiled mode has no single tree to animate, skipping GIF");
+            }
+            tiled = new TiledQuadtree(planes, effectiveTileSize, minBlockSize, threshold, errorMethod, threads, progress);
+            this.quadtree = null;
+            mark = lap(phases, "tree", mark);
+            progress.startPhase("render", 0);
+            compressed = tiled.compressImage();
+            if (outputWidth > 0) compressed = resample(compressed, outputWidth, outputHeight);
+            treeDepth = tiled.getDepth();
+            nodeCount = tiled.getNodeCount();
+        } else if (ycbcr) {
+            YCbCrQuadtree tree = new YCbCrQuadtree(planes, minBlockSize, threshold,
+                chromaMinBlockSize, chromaThreshold, errorMethod, generateGif, progress);
+            this.quadtree = tree.getLuma();
+            mark = lap(phases, "tree", mark);
+            progress.startPhase("render", 0);
+            compressed = tree.compressImage();
+            if (outputWidth > 0) compressed = resample(compressed, outputWidth, outputHeight);
+            treeDepth = tree.getDepth();
+            nodeCount = tree.getNodeCount();
+        } else {
+            // Reuse cached tree unless frames are needed, linear trees hold midpoint splits only
+            LinearQuadtree cachedTree = null;
+            if (cache != null && !generateGif && !adaptiveSplits) {
+                cachedTree = cache.loadTree(cacheKey, errorMethod, threshold, minBlockSize);
+            }
+            
+            if (cachedTree != null) {
+                this.quadtree = cachedTree.toQuadtree();
+                quadtree.setProgress(progress);
+            } else {
+                this.quadtree = new Quadtree(stats, minBlockSize, threshold, errorMethod, generateGif, adaptiveSplits,
+                    progress);
+                if (cache != null && !adaptiveSplits) {
+                    cache.storeTree(cacheKey, LinearQuadtree.fromQuadtree(quadtree));
+                }
+            }
+            mark = lap(phases, "tree", mark);
+            
+            // Leaves recolored from a clustered palette, cached trees stay unquantized
+            if (paletteSize > 0) {
+                progress.startPhase("palette", 0);
+                palette = LeafPalette.build(quadtree, paletteSize);
+                this.quadtree = quadtree.quantize(palette);
+                mark = lap(phases, "palette", mark);
+            }
+            progress.startPhase("render", pixels);
+            compressed = outputWidth > 0 ? quadtree.render(outputWidth, outputHeight) : quadtree.compressImage();
+            treeDepth = quadtree.getDepth();
+            nodeCount = quadtree.getNodeCount();
+        }
         
-        // Save output
-        File outputFile = new File(outputPath);
-        String format = outputPath.substring(outputPath.lastIndexOf('.') + 1);
-        ImageIO.write(compressed, format, outputFile);
+        mark = lap(phases, "render", mark);
         
-        // Create GIF
-        if (generateGif && quadtree.getCompressionSteps() != null) {
-            GifGenerator.createGif(quadtree.getCompressionSteps(), gifPath);
-        }
+        // Image, GIF and tree file encode concurrently
+        progress.startPhase("output", 0);
+        File outputFile = new File(outputPath);
+        Map<String, Long> outputs = writeOutputs(compressed, tiled == null && !ycbcr);
+        lap(phases, "output", mark);
         
         // Return stats
         long endTime = System.currentTimeMillis();
-        return new CompressionStats(
+        CompressionStats result = new CompressionStats(
             inputFile.length(),
             outputFile.length(),
-            quadtree.getDepth(),
-            quadtree.getNodeCount(),
+            treeDepth,
+            nodeCount,
             endTime - startTime
         );
+        if (palette != null) {
+            result.setPaletteStats(palette.getSize(), palette.getDistinctColors(), palette.getLeafCount(),
+                palette.getAddedRmse());
+        }
+        if (tiled != null) {
+            result.setTileStats(tiled.getTiles().size(), effectiveTileSize, tiled.getMinTileNodes(), tiled.getMaxTileNodes());
+        }
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            result.addPhaseTime(phase.getKey(), phase.getValue());
+        }
+        for (Map.Entry<String, Long> output : outputs.entrySet()) {
+            result.addOutputTime(output.getKey(), output.getValue());
+        }
+        return result;
+    }
+    
+    // Tiled and YCbCr results exist at source size only, area-average down or scale up
+    private static BufferedImage resample(BufferedImage image, int width, int height) {
+        boolean gray = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        if (width <= image.getWidth() && height <= image.getHeight()) {
+            PixelPlanes scaled = ImagePyramid.boxFilter(image, width, height);
+            if (scaled.getChannels() > 1) {
+                return scaled.toImage();
+            }
+            BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            byte[] levels = ((DataBufferByte) result.getRaster().getDataBuffer()).getData();
+            System.arraycopy(scaled.getPlane(0), 0, levels, 0, levels.length);
+            return result;
+        }
+        
+        BufferedImage result = new BufferedImage(width, height, gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = result.createGraphics();
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return result;
+    }
+    
+    // Decode to planes, very large images are box-filtered down
+    public static PixelPlanes readPlanes(File inputFile) throws IOException {
+        return readPlanes(inputFile, true);
+    }
+    
+    // Full resolution is bounded by int-indexed planes, checked before decoding
+    public static PixelPlanes readPlanes(File inputFile, boolean downscale) throws IOException {
+        if (!downscale) {
+            int[] dimensions = ImageUtil.probeDimensions(inputFile);
+            if (dimensions != null && (long) dimensions[0] * dimensions[1] > PixelPlanes.MAX_PIXELS) {
+                throw new IOException("Image has " + (long) dimensions[0] * dimensions[1]
+                    + " pixels, planes hold at most " + PixelPlanes.MAX_PIXELS);
+            }
+        }
+        BufferedImage original = ImageUtil.readImage(inputFile);
+        
+        // Scale large images
+        long pixels = (long) original.getWidth() * original.getHeight();
+        if (downscale && pixels > 10000000) { // > 10MP
+            double scale = Math.sqrt(10000000.0 / pixels);
+            int newWidth = (int)(original.getWidth() * scale);
+            int newHeight = (int)(original.getHeight() * scale);
+            System.out.println("Image is very large, scaling down for processing...");
+            return ImagePyramid.boxFilter(original, newWidth, newHeight);
+        }
+        return PixelPlanes.fromImage(original);
+    }
+    
+    // One task per requested output, returns nanos spent on each
+    private Map<String, Long> writeOutputs(BufferedImage compressed, boolean wholeTree) throws IOException {
+        Map<String, Callable<?>> tasks = new LinkedHashMap<>();
+        String format = outputPath.substring(outputPath.lastIndexOf('.') + 1);
+        tasks.put("image", () -> ImageIO.write(compressed, format, new File(outputPath)));
+        
+        if (generateGif && quadtree != null && quadtree.getCompressionSteps() != null) {
+            List<BufferedImage> frames = quadtree.getCompressionSteps();
+            tasks.put("gif", () -> {
+                GifGenerator.createGif(frames, gifPath);
+                return null;
+            });
+        }
+        
+        if (treePath != null) {
+            if (!wholeTree || adaptiveSplits) {
+                System.out.println("Tree files hold a single midpoint-split tree, skipping tree file");
+            } else {
+                Quadtree tree = quadtree;
+                LeafPalette leafPalette = palette;
+                tasks.put("tree", () -> {
+                    try (DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(new FileOutputStream(treePath)))) {
+                        LinearQuadtree linear = leafPalette != null
+                            ? LinearQuadtree.fromQuadtree(tree, leafPalette) : LinearQuadtree.fromQuadtree(tree);
+                        linear.writeTo(out);
+                    }
+                    return null;
+                });
+            }
+        }
+        
+        Map<String, Long> timings = new LinkedHashMap<>();
+        if (tasks.size() == 1) {
+            try {
+                timings.put("image", timed(tasks.get("image")));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return timings;
+        }
+        
+        ExecutorService pool = Executors.newFixedThreadPool(tasks.size());
+        try {
+            Map<String, CompletableFuture<Long>> futures = new LinkedHashMap<>();
+            for (Map.Entry<String, Callable<?>> task : tasks.entrySet()) {
+                futures.put(task.getKey(), CompletableFuture.supplyAsync(() -> timed(task.getValue()), pool));
+            }
+            
+            // Completes after every output, failed or not
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+            for (Map.Entry<String, CompletableFuture<Long>> future : futures.entrySet()) {
+                timings.put(future.getKey(), future.getValue().join());
+            }
+            return timings;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    private static long timed(Callable<?> task) {
+        long start = System.nanoTime();
+        try {
+            task.call();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return System.nanoTime() - start;
+    }
+    
+    // Record time since the previous mark under phase
+    private static long lap(Map<String, Long> phases, String phase, long since) {
+        long now = System.nanoTime();
+        phases.merge(phase, now - since, Long::sum);
+        return now;
+    }
+    
+    // Separate luma and subsampled chroma trees
+    public void setYCbCrMode(double chromaThreshold, int chromaMinBlockSize) {
+        this.ycbcrMode = true;
+        this.chromaThreshold = chromaThreshold;
+        this.chromaMinBlockSize = chromaMinBlockSize;
+    }
+    
+    // Independent tree per tile
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+    }
+    
+    // Content-aware cut positions
+    public void setAdaptiveSplits(boolean adaptiveSplits) {
+        this.adaptiveSplits = adaptiveSplits;
+    }
+    
+    // Rasterize the tree at this size instead of the source size
+    public void setOutputSize(int outputWidth, int outputHeight) {
+        if (outputWidth < 1 || outputHeight < 1) {
+            throw new IllegalArgumentException("Output size must be positive");
+        }
+        this.outputWidth = outputWidth;
+        this.outputHeight = outputHeight;
+    }
+    
+    // Also serialize the tree, whole-image midpoint trees only
+    public void setTreePath(String treePath) {
+        this.treePath = treePath;
+    }
+    
+    // Phase, node, pixel and ETA callbacks
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+    
+    // Checked during tree builds, threshold search and rendering, compress then throws CancellationException
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+    
+    // Enable on-disk cache
+    public void setCache(StatsCache cache) {
+        this.cache = cache;
+    }
+    
+    // Cluster leaf colors into at most this many entries, 0 keeps exact colors
+    public void setPaletteSize(int paletteSize) {
+        if (paletteSize < 0 || paletteSize > LeafPalette.MAX_COLORS) {
+            throw new IllegalArgumentException("Palette size must be between 0 and " + LeafPalette.MAX_COLORS);
+        }
+        this.paletteSize = paletteSize;
+    }
+    
+    // Budget for the tiling decision, defaults to the whole-process budget
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+    
+    // Integral tables in direct memory, or mapped scratch files in the directory when given
+    public void setOffHeapStatistics(boolean offHeapStats, File offHeapDirectory) {
+        this.offHeapStats = offHeapStats;
+        this.offHeapDirectory = offHeapDirectory;
     }
     
     // Find best threshold
-    private double findOptimalThreshold(BufferedImage original, double targetRatio) {
+    private double findOptimalThreshold(BlockStatistics stats, double targetRatio, ProgressTracker progress) {
         // Set search range
         double minThreshold = 0;
         double maxThreshold = 1000;
@@ -99,16 +468,19 @@ public class ImageCompressor {
         double currentRatio;
         int maxIterations = 8;
         
-        // Smaller test image
-        BufferedImage testImage = scaleDown(original, 2);
+        // Half-size pyramid level
+        PixelPlanes testPlanes = new ImagePyramid(stats).getLevel(1);
+        BlockStatistics testStats = BlockStatistics.compute(testPlanes, stats.hasSquares());
         int testBlockSize = Math.max(1, minBlockSize / 2);
+        progress.startPhase("search", (long) testPlanes.getWidth() * testPlanes.getHeight() * maxIterations);
         
         for (int i = 0; i < maxIterations; i++) {
             // Test compression
-            Quadtree testTree = new Quadtree(testImage, testBlockSize, currentThreshold, errorMethod, false);
+            Quadtree testTree = new Quadtree(testStats, testBlockSize, currentThreshold, errorMethod, false, adaptiveSplits,
+                progress);
             
             // Check ratio
-            currentRatio = 1.0 - (double) testTree.getNodeCount() / (testImage.getWidth() * testImage.getHeight());
+            currentRatio = 1.0 - (double) testTree.getNodeCount() / (testPlanes.getWidth() * testPlanes.getHeight());
             
             // Close enough
             if (Math.abs(currentRatio - targetRatio) < 0.05) {
@@ -122,34 +494,8 @@ public class ImageCompressor {
             }
             
             currentThreshold = (minThreshold + maxThreshold) / 2;
-            
-            // Free memory
-            System.gc();
         }
         
         return currentThreshold;
     }
-    
-    // Scale by factor
-    private BufferedImage scaleDown(BufferedImage original, int factor) {
-        int width = original.getWidth() / factor;
-        int height = original.getHeight() / factor;
-        return scaleImage(original, width, height);
-    }
-
-    // Resize image
-    private BufferedImage scaleImage(BufferedImage original, int width, int height) {
-        // Choose format
-        int imageType = (width * height > 4000000) ? 
-                        BufferedImage.TYPE_3BYTE_BGR : 
-                        BufferedImage.TYPE_INT_RGB;
-                        
-        BufferedImage scaled = new BufferedImage(width, height, imageType);
-        
-        Graphics2D g = scaled.createGraphics();
-        g.drawImage(original, 0, 0, width, height, null);
-        g.dispose();
-        
-        return scaled;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,341 @@
+package src.compression;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import javax.imageio.ImageIO;
+import src.error.BlockStatistics;
+import src.error.BlockSummary;
+import src.error.ErrorCalculator;
+import src.error.ErrorMethod;
+import src.error.ErrorMetric;
+import src.error.ErrorMetrics;
+import src.model.Node;
+import src.model.Quadtree;
+import src.util.ImageUtil;
+import src.util.PixelPlanes;
+
+// Every metric's tree from one decode, one statistics pass and one fused traversal
+public class MetricComparison {
+    // Blocks above this depth fork their quadrants
+    private static final int PARALLEL_DEPTH = 3;
+
+    private final List<ErrorMetric> metrics;
+    private final double[] thresholds;
+    private final int minBlockSize;
+    private final boolean needSquares;
+    private BlockStatistics stats;
+
+    // One compared metric
+    public static class Result {
+        private final ErrorMetric metric;
+        private final double threshold;
+        private final Quadtree tree;
+        private final double psnr;
+        private String outputPath;
+        private long outputBytes;
+
+        Result(ErrorMetric metric, double threshold, Quadtree tree, double psnr) {
+            this.metric = metric;
+            this.threshold = threshold;
+            this.tree = tree;
+            this.psnr = psnr;
+        }
+
+        public ErrorMetric getMetric() { return metric; }
+        public double getThreshold() { return threshold; }
+        public Quadtree getTree() { return tree; }
+        public double getPsnr() { return psnr; }
+        public String getOutputPath() { return outputPath; }
+        public long getOutputBytes() { return outputBytes; }
+    }
+
+    public MetricComparison(List<ErrorMetric> metrics, double[] thresholds, int minBlockSize) {
+        if (metrics.isEmpty() || metrics.size() != thresholds.length) {
+            throw new IllegalArgumentException("Need one threshold per metric");
+        }
+        boolean squares = false;
+        for (ErrorMetric metric : metrics) {
+            if (!metric.usesSourcePlanes()) {
+                throw new IllegalArgumentException(metric.getName() + " reads transformed planes and cannot share statistics");
+            }
+            squares |= ErrorCalculator.needsSquares(metric);
+        }
+        this.metrics = new ArrayList<>(metrics);
+        this.thresholds = thresholds.clone();
+        this.minBlockSize = minBlockSize;
+        this.needSquares = squares;
+    }
+
+    // Build all trees together, threads share the quadrant work
+    public List<Result> compare(PixelPlanes planes, int threads) {
+        this.stats = BlockStatistics.compute(planes, needSquares);
+        boolean[] active = new boolean[metrics.size()];
+        Arrays.fill(active, true);
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        Node[] roots;
+        try {
+            roots = pool.invoke(new BlockTask(0, 0, planes.getWidth(), planes.getHeight(), 0, active));
+        } finally {
+            pool.shutdown();
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (int k = 0; k < metrics.size(); k++) {
+            Quadtree tree = new Quadtree(roots[k], planes.getWidth(), planes.getHeight(),
+                minBlockSize, thresholds[k], metrics.get(k));
+            results.add(new Result(metrics.get(k), thresholds[k], tree, psnr(planes, tree.renderPlanes())));
+        }
+        return results;
+    }
+
+    @SuppressWarnings("serial")
+    private class BlockTask extends RecursiveTask<Node[]> {
+        private final int x, y, width, height, depth;
+        private final boolean[] active;
+
+        BlockTask(int x, int y, int width, int height, int depth, boolean[] active) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.depth = depth;
+            this.active = active;
+        }
+
+        @Override
+        protected Node[] compute() {
+            return build(x, y, width, height, depth, active);
+        }
+    }
+
+    // Nodes of this block for every active tree, one summary serves all their metrics
+    private Node[] build(int x, int y, int width, int height, int depth, boolean[] active) {
+        Set<BlockSummary.Statistic> needed = EnumSet.noneOf(BlockSummary.Statistic.class);
+        for (int k = 0; k < active.length; k++) {
+            if (active[k]) needed.addAll(metrics.get(k).getStatistics());
+        }
+        BlockSummary summary = BlockSummary.of(stats, x, y, width, height, needed);
+        int[] avgColor = ErrorCalculator.calculateAvgColor(stats, x, y, width, height);
+
+        boolean canSplit = width > minBlockSize && height > minBlockSize;
+        Node[] nodes = new Node[active.length];
+        boolean[] splitting = new boolean[active.length];
+        boolean anySplit = false;
+        for (int k = 0; k < active.length; k++) {
+            if (!active[k]) continue;
+            double error = metrics.get(k).error(summary);
+            nodes[k] = new Node(x, y, width, height, avgColor, error);
+            splitting[k] = canSplit && error > thresholds[k];
+            anySplit |= splitting[k];
+        }
+        if (!anySplit) return nodes;
+
+        // Midpoint cut, odd remainder goes right and down
+        int halfWidth = width / 2;
+        int halfHeight = height / 2;
+        Node[][] children;
+        if (depth < PARALLEL_DEPTH) {
+            BlockTask[] tasks = {
+                new BlockTask(x, y, halfWidth, halfHeight, depth + 1, splitting),
+                new BlockTask(x + halfWidth, y, width - halfWidth, halfHeight, depth + 1, splitting),
+                new BlockTask(x, y + halfHeight, halfWidth, height - halfHeight, depth + 1, splitting),
+                new BlockTask(x + halfWidth, y + halfHeight, width - halfWidth, height - halfHeight, depth + 1, splitting)
+            };
+            ForkJoinTask.invokeAll(tasks);
+            children = new Node[][] { tasks[0].join(), tasks[1].join(), tasks[2].join(), tasks[3].join() };
+        } else {
+            children = new Node[][] {
+                build(x, y, halfWidth, halfHeight, depth + 1, splitting),
+                build(x + halfWidth, y, width - halfWidth, halfHeight, depth + 1, splitting),
+                build(x, y + halfHeight, halfWidth, height - halfHeight, depth + 1, splitting),
+                build(x + halfWidth, y + halfHeight, width - halfWidth, height - halfHeight, depth + 1, splitting)
+            };
+        }
+
+        for (int k = 0; k < active.length; k++) {
+            if (splitting[k]) {
+                nodes[k].split(children[0][k], children[1][k], children[2][k], children[3][k]);
+            }
+        }
+        return nodes;
+    }
+
+    // Peak signal-to-noise ratio over all channels, infinite for identical planes
+    private static double psnr(PixelPlanes original, PixelPlanes compressed) {
+        double squaredError = 0;
+        long samples = 0;
+        for (int c = 0; c < original.getChannels(); c++) {
+            byte[] a = original.getPlane(c);
+            byte[] b = compressed.getPlane(c);
+            for (int i = 0; i < a.length; i++) {
+                int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+                squaredError += diff * diff;
+            }
+            samples += a.length;
+        }
+        double mse = squaredError / samples;
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    // Render and encode every tree concurrently, files named after the metric
+    public void writeOutputs(List<Result> results, File outputDir, String baseName, String format, int threads)
+            throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (Result result : results) {
+                File file = new File(outputDir, baseName + "-" + slug(result.getMetric()) + "." + format);
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        ImageIO.write(result.getTree().compressImage(), format, file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    result.outputPath = file.getPath();
+                    result.outputBytes = file.length();
+                }, pool));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static String slug(ErrorMetric metric) {
+        return metric instanceof ErrorMethod
+            ? ((ErrorMethod) metric).name().toLowerCase(Locale.ROOT)
+            : "metric" + metric.getId();
+    }
+
+    // Side-by-side table
+    public static String getSummary(List<Result> results) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-38s %10s %9s %6s %9s %11s  %s%n",
+            "Method", "Threshold", "Nodes", "Depth", "PSNR dB", "Output", "File"));
+        for (Result result : results) {
+            sb.append(String.format(Locale.ROOT, "%-38s %10.3f %9d %6d %9.2f %11s  %s%n",
+                result.getMetric().getName(), result.getThreshold(), result.getTree().getNodeCount(),
+                result.getTree().getDepth(), result.getPsnr(),
+                result.getOutputPath() != null ? result.getOutputBytes() / 1024 + " KB" : "-",
+                result.getOutputPath() != null ? result.getOutputPath() : "-"));
+        }
+        return sb.toString();
+    }
+
+    // Middle of each built-in's suggested range
+    private static double defaultThreshold(ErrorMetric metric) {
+        if (metric == ErrorMethod.VARIANCE) return 200;
+        if (metric == ErrorMethod.MAD) return 20;
+        if (metric == ErrorMethod.MAX_DIFF) return 40;
+        if (metric == ErrorMethod.ENTROPY) return 2;
+        if (metric == ErrorMethod.SSIM) return 0.1;
+        return 0;
+    }
+
+    // -methods 1,2,.. -threshold ID=T -minBlock B -threads N -out DIR input
+    public static void main(String[] args) throws IOException {
+        String methods = null;
+        Map<Integer, Double> thresholdById = new LinkedHashMap<>();
+        int minBlockSize = 4;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String out = null;
+        String input = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-methods": methods = args[++i]; break;
+                case "-threshold": {
+                    String[] pair = args[++i].split("=");
+                    thresholdById.put(Integer.parseInt(pair[0]), Double.parseDouble(pair[1]));
+                    break;
+                }
+                case "-minBlock": minBlockSize = Integer.parseInt(args[++i]); break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-out": out = args[++i]; break;
+                default: input = args[i];
+            }
+        }
+        if (input == null) {
+            System.err.println("Usage: MetricComparison [-methods 1,2,..] [-threshold ID=T].. [-minBlock B] "
+                + "[-threads N] [-out DIR] input");
+            System.exit(2);
+            return;
+        }
+
+        // Built-ins by default, other metrics need an explicit threshold
+        List<ErrorMetric> metrics = new ArrayList<>();
+        if (methods == null) {
+            metrics.addAll(ErrorMetrics.all());
+        } else {
+            for (String id : methods.split(",")) {
+                ErrorMetric metric = ErrorMetrics.getById(Integer.parseInt(id.trim()));
+                if (metric == null) {
+                    throw new IllegalArgumentException("Unknown error method " + id);
+                }
+                metrics.add(metric);
+            }
+        }
+        List<ErrorMetric> selected = new ArrayList<>();
+        List<Double> thresholds = new ArrayList<>();
+        for (ErrorMetric metric : metrics) {
+            if (!metric.usesSourcePlanes()) {
+                System.out.println("Skipping " + metric.getName() + ", it reads transformed planes");
+                continue;
+            }
+            double threshold = thresholdById.getOrDefault(metric.getId(), defaultThreshold(metric));
+            if (threshold <= 0) {
+                System.out.println("Skipping " + metric.getName() + ", no threshold given");
+                continue;
+            }
+            selected.add(metric);
+            thresholds.add(threshold);
+        }
+
+        File inputFile = new File(input);
+        long start = System.nanoTime();
+        PixelPlanes planes = PixelPlanes.fromImage(ImageUtil.readImage(inputFile));
+        long decoded = System.nanoTime();
+
+        MetricComparison comparison = new MetricComparison(selected,
+            thresholds.stream().mapToDouble(Double::doubleValue).toArray(), minBlockSize);
+        List<Result> results = comparison.compare(planes, threads);
+        long built = System.nanoTime();
+
+        if (out != null) {
+            File outputDir = new File(out);
+            if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+                throw new IOException("Cannot create output directory " + out);
+            }
+            String name = inputFile.getName();
+            int dot = name.lastIndexOf('.');
+            String format = dot > 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "png";
+            comparison.writeOutputs(results, outputDir, dot > 0 ? name.substring(0, dot) : name, format, threads);
+        }
+        long written = System.nanoTime();
+
+        System.out.print(getSummary(results));
+        System.out.printf(Locale.ROOT, "Decode %.1f ms, statistics and %d trees %.1f ms, outputs %.1f ms%n",
+            (decoded - start) / 1e6, results.size(), (built - decoded) / 1e6, (written - built) / 1e6);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,133 @@
+package src.compression;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import javax.imageio.ImageIO;
+import src.error.BlockStatistics;
+import src.error.ChangeMask;
+import src.error.ErrorCalculator;
+import src.error.ErrorMetric;
+import src.error.ErrorMetrics;
+import src.error.PatchedStatistics;
+import src.model.Quadtree;
+import src.util.ImageUtil;
+import src.util.PixelPlanes;
+
+// Frame sequence mode, unchanged blocks keep the previous frame's subtree
+public class SequenceCompressor {
+    private final ErrorMetric errorMethod;
+    private final double threshold;
+    private final int minBlockSize;
+    private PixelPlanes previousFrame;
+    private BlockStatistics previousStats;
+    private Quadtree previousTree;
+
+    // Totals across frames
+    private int frames;
+    private long reusedNodes;
+    private long rebuiltNodes;
+    private long totalTimeMs;
+
+    public SequenceCompressor(ErrorMetric errorMethod, double threshold, int minBlockSize) {
+        this.errorMethod = errorMethod;
+        this.threshold = threshold;
+        this.minBlockSize = minBlockSize;
+    }
+
+    // Full build on the first frame or a size change
+    public Quadtree compressFrame(PixelPlanes frame) {
+        long start = System.currentTimeMillis();
+
+        BlockStatistics stats;
+        Quadtree tree;
+        if (previousTree == null || previousFrame.getWidth() != frame.getWidth()
+                || previousFrame.getHeight() != frame.getHeight()
+                || previousFrame.getChannels() != frame.getChannels()) {
+            stats = BlockStatistics.compute(frame, ErrorCalculator.needsSquares(errorMethod));
+            tree = new Quadtree(stats, minBlockSize, threshold, errorMethod, false);
+        } else {
+            // Previous tables patched over the changed box, equal frames keep them as they are
+            ChangeMask changes = ChangeMask.compare(previousFrame, frame);
+            Rectangle box = changes.getBounds();
+            stats = box == null ? previousStats
+                : PatchedStatistics.patch(previousStats, frame, box.x, box.y, box.width, box.height);
+            tree = new Quadtree(stats, previousTree, changes);
+        }
+
+        previousFrame = frame;
+        previousStats = stats;
+        previousTree = tree;
+        frames++;
+        reusedNodes += tree.getReusedNodes();
+        rebuiltNodes += tree.getRebuiltNodes();
+        totalTimeMs += System.currentTimeMillis() - start;
+        return tree;
+    }
+
+    public String getSummary() {
+        long total = reusedNodes + rebuiltNodes;
+        StringBuilder sb = new StringBuilder();
+        sb.append("===== SEQUENCE STATISTICS =====\n");
+        sb.append("Frames: ").append(frames).append("\n");
+        sb.append("Reused nodes: ").append(reusedNodes).append("\n");
+        sb.append("Rebuilt nodes: ").append(rebuiltNodes).append("\n");
+        sb.append(String.format(Locale.ROOT, "Reuse rate: %.2f%%%n", total == 0 ? 0.0 : 100.0 * reusedNodes / total));
+        sb.append("Tree time: ").append(totalTimeMs).append(" ms\n");
+        return sb.toString();
+    }
+
+    public int getFrames() { return frames; }
+    public long getReusedNodes() { return reusedNodes; }
+    public long getRebuiltNodes() { return rebuiltNodes; }
+
+    // -method M -threshold T -minBlock B -out DIR frames...
+    public static void main(String[] args) throws IOException {
+        int methodId = 1;
+        double threshold = 50;
+        int minBlockSize = 4;
+        String out = null;
+        List<String> inputs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-method": methodId = Integer.parseInt(args[++i]); break;
+                case "-threshold": threshold = Double.parseDouble(args[++i]); break;
+                case "-minBlock": minBlockSize = Integer.parseInt(args[++i]); break;
+                case "-out": out = args[++i]; break;
+                default: inputs.add(args[i]);
+            }
+        }
+
+        ErrorMetric method = ErrorMetrics.getById(methodId);
+        if (method == null || out == null || inputs.isEmpty()) {
+            System.err.println("Usage: SequenceCompressor [-method M] [-threshold T] [-minBlock B] -out DIR frames...");
+            System.exit(2);
+            return;
+        }
+
+        File outputDir = new File(out);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create output directory " + out);
+        }
+
+        SequenceCompressor sequence = new SequenceCompressor(method, threshold, minBlockSize);
+        for (String input : inputs) {
+            File file = new File(input);
+            Quadtree tree = sequence.compressFrame(PixelPlanes.fromImage(ImageUtil.readImage(file)));
+            BufferedImage result = tree.compressImage();
+
+            String name = file.getName();
+            String format = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+            ImageIO.write(result, format, new File(outputDir, name));
+
+            System.out.println(name + ": " + tree.getNodeCount() + " nodes, "
+                + tree.getReusedNodes() + " reused, " + tree.getRebuiltNodes() + " rebuilt");
+        }
+        System.out.print(sequence.getSummary());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,429 @@
+package src.compression;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import src.error.BlockStatistics;
+import src.error.ErrorMetric;
+import src.error.OffHeapStatistics;
+import src.model.LinearQuadtree;
+import src.util.OffHeapLongArray;
+import src.util.PixelPlanes;
+
+// On-disk cache keyed by image content hash
+public class StatsCache {
+    private static final int PLANES_MAGIC = 0x5154504C; // "QTPL"
+    private static final int STATS_MAGIC = 0x51545354;  // "QTST"
+    private static final int HEADER_BYTES = 32;
+    private static final long MAP_CHUNK = 1L << 30;
+
+    private final File directory;
+    private final long maxBytes;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public StatsCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    // SHA-256 of file content
+    public static String hashFile(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    // Load decoded planes, corrupt files count as misses
+    public PixelPlanes loadPlanes(String key) {
+        File file = new File(entryDir(key), "planes.bin");
+        if (!file.exists()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = readHeader(channel, PLANES_MAGIC);
+            int width = header.getInt();
+            int height = header.getInt();
+            int channels = header.getInt();
+            long pixels = checkDimensions(width, height, channels);
+            if (pixels > PixelPlanes.MAX_PIXELS) {
+                throw new IOException("Corrupt cache file");
+            }
+            checkLength(channel, HEADER_BYTES + channels * pixels);
+
+            byte[][] planes = new byte[channels][(int) pixels];
+            long position = HEADER_BYTES;
+            for (byte[] plane : planes) {
+                position = readBytes(channel, position, plane);
+            }
+
+            hits.incrementAndGet();
+            touch(key);
+            return new PixelPlanes(width, height, planes);
+        } catch (IOException e) {
+            return discard(file);
+        }
+    }
+
+    // Store decoded planes
+    public void storePlanes(String key, PixelPlanes planes) throws IOException {
+        File dir = entryDir(key);
+        dir.mkdirs();
+
+        long size = HEADER_BYTES + (long) planes.getChannels() * planes.getWidth() * planes.getHeight();
+        File temp = File.createTempFile("planes", ".tmp", dir);
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(size);
+            writeHeader(channel, PLANES_MAGIC, planes.getWidth(), planes.getHeight(), planes.getChannels(), 0);
+
+            long position = HEADER_BYTES;
+            for (int c = 0; c < planes.getChannels(); c++) {
+                position = writeBytes(channel, position, planes.getPlane(c));
+            }
+        }
+        publish(temp, new File(dir, "planes.bin"));
+        evict(key);
+    }
+
+    // Load integral tables, null if missing, corrupt or lacking squares
+    public BlockStatistics loadStatistics(String key, PixelPlanes planes, boolean needSquares) {
+        File file = new File(entryDir(key), "stats.bin");
+        if (!file.exists()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = readHeader(channel, STATS_MAGIC);
+            int width = header.getInt();
+            int height = header.getInt();
+            int channels = header.getInt();
+            boolean withSquares = header.getInt() != 0;
+
+            if (width != planes.getWidth() || height != planes.getHeight() || channels != planes.getChannels()
+                    || (needSquares && !withSquares)) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            long cells = (width + 1L) * (height + 1L);
+            checkLength(channel, HEADER_BYTES + 8 * cells * channels * (withSquares ? 2 : 1));
+            if (cells > Integer.MAX_VALUE - 8) {
+                throw new IOException("Corrupt cache file");
+            }
+
+            long[][] sums = new long[channels][(int) cells];
+            long[][] squares = withSquares ? new long[channels][(int) cells] : null;
+            long position = HEADER_BYTES;
+            for (int c = 0; c < channels; c++) {
+                position = readLongs(channel, position, sums[c]);
+                if (withSquares) position = readLongs(channel, position, squares[c]);
+            }
+
+            hits.incrementAndGet();
+            touch(key);
+            return new BlockStatistics(planes, sums, squares);
+        } catch (IOException e) {
+            return discard(file);
+        }
+    }
+
+    // Integral tables mapped in place, no copy onto the heap
+    public OffHeapStatistics mapStatistics(String key, PixelPlanes planes, boolean needSquares) {
+        File file = new File(entryDir(key), "stats.bin");
+        if (!file.exists()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = readHeader(channel, STATS_MAGIC);
+            int width = header.getInt();
+            int height = header.getInt();
+            int channels = header.getInt();
+            boolean withSquares = header.getInt() != 0;
+
+            if (width != planes.getWidth() || height != planes.getHeight() || channels != planes.getChannels()
+                    || (needSquares && !withSquares)) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            // Mappings stay valid after the channel closes, and after eviction unlinks the file
+            long cells = (width + 1L) * (height + 1L);
+            checkLength(channel, HEADER_BYTES + 8 * cells * channels * (withSquares ? 2 : 1));
+            OffHeapLongArray[] sums = new OffHeapLongArray[channels];
+            OffHeapLongArray[] squares = withSquares ? new OffHeapLongArray[channels] : null;
+            long position = HEADER_BYTES;
+            for (int c = 0; c < channels; c++) {
+                sums[c] = OffHeapLongArray.map(channel, FileChannel.MapMode.READ_ONLY, position, cells);
+                position += 8 * cells;
+                if (withSquares) {
+                    squares[c] = OffHeapLongArray.map(channel, FileChannel.MapMode.READ_ONLY, position, cells);
+                    position += 8 * cells;
+                }
+            }
+
+            hits.incrementAndGet();
+            touch(key);
+            return new OffHeapStatistics(planes, sums, squares);
+        } catch (IOException e) {
+            return discard(file);
+        }
+    }
+
+    // Store integral tables
+    public void storeStatistics(String key, BlockStatistics stats) throws IOException {
+        File dir = entryDir(key);
+        dir.mkdirs();
+
+        int channels = stats.getChannels();
+        long tableBytes = 8L * (stats.getWidth() + 1) * (stats.getHeight() + 1);
+        long size = HEADER_BYTES + tableBytes * channels * (stats.hasSquares() ? 2 : 1);
+        File temp = File.createTempFile("stats", ".tmp", dir);
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(size);
+            writeHeader(channel, STATS_MAGIC, stats.getWidth(), stats.getHeight(), channels, stats.hasSquares() ? 1 : 0);
+
+            long position = HEADER_BYTES;
+            for (int c = 0; c < channels; c++) {
+                if (stats instanceof OffHeapStatistics) {
+                    OffHeapStatistics offHeap = (OffHeapStatistics) stats;
+                    position = offHeap.getSums(c).writeTo(channel, position);
+                    if (stats.hasSquares()) position = offHeap.getSquares(c).writeTo(channel, position);
+                } else {
+                    position = writeLongs(channel, position, stats.getSumTable(c));
+                    if (stats.hasSquares()) position = writeLongs(channel, position, stats.getSquareTable(c));
+                }
+            }
+        }
+        publish(temp, new File(dir, "stats.bin"));
+        evict(key);
+    }
+
+    // Load tree built with these settings, corrupt files count as misses
+    public LinearQuadtree loadTree(String key, ErrorMetric method, double threshold, int minBlockSize) {
+        File file = treeFile(key, method, threshold, minBlockSize);
+        if (!file.exists()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            LinearQuadtree tree = LinearQuadtree.readFrom(in);
+            hits.incrementAndGet();
+            touch(key);
+            return tree;
+        } catch (IOException e) {
+            return discard(file);
+        }
+    }
+
+    // Store tree for these settings
+    public void storeTree(String key, LinearQuadtree tree) throws IOException {
+        File file = treeFile(key, tree.getErrorMethod(), tree.getThreshold(), tree.getMinBlockSize());
+        file.getParentFile().mkdirs();
+
+        File temp = File.createTempFile("tree", ".tmp", file.getParentFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            tree.writeTo(out);
+        }
+        publish(temp, file);
+        evict(key);
+    }
+
+    private File entryDir(String key) {
+        return new File(directory, key);
+    }
+
+    private File treeFile(String key, ErrorMetric method, double threshold, int minBlockSize) {
+        String name = "tree-" + method.getId() + "-" + Double.doubleToLongBits(threshold) + "-" + minBlockSize + ".bin";
+        return new File(entryDir(key), name);
+    }
+
+    // Unreadable file is dropped and recomputed by the caller
+    private <T> T discard(File file) {
+        System.out.println("Discarding corrupt cache file " + file);
+        file.delete();
+        misses.incrementAndGet();
+        return null;
+    }
+
+    // Concurrent readers never see partial files
+    private static void publish(File temp, File target) throws IOException {
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Mark entry as recently used
+    private void touch(String key) {
+        entryDir(key).setLastModified(System.currentTimeMillis());
+    }
+
+    // Drop least recently used entries over the cap
+    private synchronized void evict(String keep) {
+        touch(keep);
+        File[] entries = directory.listFiles(File::isDirectory);
+        if (entries == null) return;
+
+        List<File> candidates = new ArrayList<>();
+        long total = 0;
+        for (File entry : entries) {
+            total += entrySize(entry);
+            if (!entry.getName().equals(keep)) {
+                candidates.add(entry);
+            }
+        }
+
+        candidates.sort(Comparator.comparingLong(File::lastModified));
+        for (File entry : candidates) {
+            if (total <= maxBytes) break;
+            total -= entrySize(entry);
+            deleteEntry(entry);
+        }
+    }
+
+    private static long entrySize(File entry) {
+        long size = 0;
+        File[] files = entry.listFiles();
+        if (files != null) {
+            for (File file : files) size += file.length();
+        }
+        return size;
+    }
+
+    private static void deleteEntry(File entry) {
+        File[] files = entry.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        entry.delete();
+    }
+
+    private static void writeHeader(FileChannel channel, int magic, int width, int height, int channels, int flags) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+        header.putInt(magic).putInt(width).putInt(height).putInt(channels).putInt(flags);
+        header.rewind();
+        channel.write(header, 0);
+    }
+
+    private static ByteBuffer readHeader(FileChannel channel, int magic) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) break;
+        }
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != magic) {
+            throw new IOException("Corrupt cache file");
+        }
+        return header;
+    }
+
+    // Pixel count of a sane header
+    private static long checkDimensions(int width, int height, int channels) throws IOException {
+        if (width <= 0 || height <= 0 || (channels != 1 && channels != 3)) {
+            throw new IOException("Corrupt cache file");
+        }
+        return (long) width * height;
+    }
+
+    // Truncated or padded files are not trusted
+    private static void checkLength(FileChannel channel, long expected) throws IOException {
+        if (channel.size() != expected) {
+            throw new IOException("Corrupt cache file");
+        }
+    }
+
+    // Mapped bulk copies in chunks below 2GB
+    private static long writeBytes(FileChannel channel, long position, byte[] data) throws IOException {
+        for (int offset = 0; offset < data.length; ) {
+            int length = (int) Math.min(MAP_CHUNK, data.length - offset);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+            buffer.put(data, offset, length);
+            offset += length;
+            position += length;
+        }
+        return position;
+    }
+
+    private static long readBytes(FileChannel channel, long position, byte[] data) throws IOException {
+        for (int offset = 0; offset < data.length; ) {
+            int length = (int) Math.min(MAP_CHUNK, data.length - offset);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            buffer.get(data, offset, length);
+            offset += length;
+            position += length;
+        }
+        return position;
+    }
+
+    private static long writeLongs(FileChannel channel, long position, long[] data) throws IOException {
+        int perChunk = (int) (MAP_CHUNK / 8);
+        for (int offset = 0; offset < data.length; ) {
+            int length = Math.min(perChunk, data.length - offset);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, 8L * length);
+            buffer.order(ByteOrder.nativeOrder()).asLongBuffer().put(data, offset, length);
+            offset += length;
+            position += 8L * length;
+        }
+        return position;
+    }
+
+    private static long readLongs(FileChannel channel, long position, long[] data) throws IOException {
+        int perChunk = (int) (MAP_CHUNK / 8);
+        for (int offset = 0; offset < data.length; ) {
+            int length = Math.min(perChunk, data.length - offset);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, 8L * length);
+            buffer.order(ByteOrder.nativeOrder()).asLongBuffer().get(data, offset, length);
+            offset += length;
+            position += 8L * length;
+        }
+        return position;
+    }
+
+    // Cache counters
+    public int getHits() { return hits.get(); }
+    public int getMisses() { return misses.get(); }
+}
\ No newline at end of file
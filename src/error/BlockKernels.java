@@ -0,0 +1,16 @@
+package src.error;
+
+// Per-block loops over one channel plane
+public interface BlockKernels {
+    // Sum of |value - mean|
+    long absoluteDeviation(byte[] plane, int stride, int x, int y, int width, int height, int mean);
+
+    // Max minus min
+    int range(byte[] plane, int stride, int x, int y, int width, int height);
+
+    // Min in bits 8-15, max in bits 0-7
+    int minMax(byte[] plane, int stride, int x, int y, int width, int height);
+
+    // Implementation name for reports
+    String getName();
+}
@@ -0,0 +1,85 @@
+package src.error;
+
+import src.util.PixelPlanes;
+
+// Integral tables for O(1) block sums
+public class BlockStatistics {
+    private final PixelPlanes planes;
+    private final int stride;
+    private final long[][] sums;
+    private final long[][] squares;
+
+    public BlockStatistics(PixelPlanes planes, long[][] sums, long[][] squares) {
+        this.planes = planes;
+        this.stride = planes.getWidth() + 1;
+        this.sums = sums;
+        this.squares = squares;
+    }
+
+    // One pass over every plane
+    public static BlockStatistics compute(PixelPlanes planes, boolean withSquares) {
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        int channels = planes.getChannels();
+        int stride = width + 1;
+        int size = stride * (height + 1);
+
+        long[][] sums = new long[channels][];
+        long[][] squares = withSquares ? new long[channels][] : null;
+
+        for (int c = 0; c < channels; c++) {
+            byte[] plane = planes.getPlane(c);
+            long[] sum = new long[size];
+            long[] square = withSquares ? new long[size] : null;
+
+            for (int y = 0; y < height; y++) {
+                long rowSum = 0, rowSquare = 0;
+                int src = y * width;
+                int above = y * stride + 1;
+                int dst = above + stride;
+                for (int x = 0; x < width; x++) {
+                    int v = plane[src + x] & 0xFF;
+                    rowSum += v;
+                    sum[dst + x] = sum[above + x] + rowSum;
+                    if (square != null) {
+                        rowSquare += v * v;
+                        square[dst + x] = square[above + x] + rowSquare;
+                    }
+                }
+            }
+
+            sums[c] = sum;
+            if (withSquares) squares[c] = square;
+        }
+
+        return new BlockStatistics(planes, sums, squares);
+    }
+
+    // Channel sum over block
+    public long sum(int channel, int x, int y, int width, int height) {
+        return rect(sums[channel], x, y, width, height);
+    }
+
+    // Channel sum of squares over block
+    public long sumOfSquares(int channel, int x, int y, int width, int height) {
+        if (squares == null) {
+            throw new IllegalStateException("Statistics were computed without squares");
+        }
+        return rect(squares[channel], x, y, width, height);
+    }
+
+    private long rect(long[] table, int x, int y, int width, int height) {
+        int top = y * stride + x;
+        int bottom = (y + height) * stride + x;
+        return table[bottom + width] - table[bottom] - table[top + width] + table[top];
+    }
+
+    // Data getters
+    public PixelPlanes getPlanes() { return planes; }
+    public int getWidth() { return planes.getWidth(); }
+    public int getHeight() { return planes.getHeight(); }
+    public int getChannels() { return planes.getChannels(); }
+    public boolean hasSquares() { return squares != null; }
+    public long[] getSumTable(int channel) { return sums[channel]; }
+    public long[] getSquareTable(int channel) { return squares[channel]; }
+}
\ No newline at end of file
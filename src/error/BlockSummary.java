@@ -0,0 +1,175 @@
+package src.error;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import src.util.PixelPlanes;
+
+// Sufficient statistics of one block, quadrant summaries merge exactly
+public class BlockSummary {
+    // What a metric may ask for
+    public enum Statistic { SUM, SQUARES, MIN_MAX, HISTOGRAM }
+
+    private final long count;
+    private final int channels;
+    private final long[] sums;
+    private final long[] squares;
+    private final int[] min;
+    private final int[] max;
+    private final int[][] histograms;
+
+    public BlockSummary(long count, long[] sums, long[] squares, int[] min, int[] max, int[][] histograms) {
+        this.count = count;
+        this.sums = sums;
+        this.squares = squares;
+        this.min = min;
+        this.max = max;
+        this.histograms = histograms;
+        this.channels = sums != null ? sums.length : squares != null ? squares.length
+            : min != null ? min.length : histograms != null ? histograms.length : 0;
+    }
+
+    // Sums and squares from integral tables in O(1), the rest in one pass per channel
+    public static BlockSummary of(BlockStatistics stats, int x, int y, int width, int height, Set<Statistic> statistics) {
+        int channels = stats.getChannels();
+        long[] sums = null;
+        long[] squares = null;
+        int[] min = null;
+        int[] max = null;
+        int[][] histograms = null;
+
+        if (statistics.contains(Statistic.SUM)) {
+            sums = new long[channels];
+            for (int c = 0; c < channels; c++) sums[c] = stats.sum(c, x, y, width, height);
+        }
+        if (statistics.contains(Statistic.SQUARES)) {
+            squares = new long[channels];
+            for (int c = 0; c < channels; c++) squares[c] = stats.sumOfSquares(c, x, y, width, height);
+        }
+
+        PixelPlanes planes = stats.getPlanes();
+        int stride = planes.getWidth();
+        if (statistics.contains(Statistic.HISTOGRAM)) {
+            histograms = new int[channels][256];
+            for (int c = 0; c < channels; c++) {
+                byte[] plane = planes.getPlane(c);
+                int[] histogram = histograms[c];
+                for (int j = y; j < y + height; j++) {
+                    int offset = j * stride;
+                    for (int i = x; i < x + width; i++) {
+                        histogram[plane[offset + i] & 0xFF]++;
+                    }
+                }
+            }
+        }
+        if (statistics.contains(Statistic.MIN_MAX)) {
+            min = new int[channels];
+            max = new int[channels];
+            if (histograms != null) {
+                // Ends of the histogram, no second pass
+                for (int c = 0; c < channels; c++) {
+                    int low = 0;
+                    int high = 255;
+                    while (histograms[c][low] == 0) low++;
+                    while (histograms[c][high] == 0) high--;
+                    min[c] = low;
+                    max[c] = high;
+                }
+            } else {
+                BlockKernels kernels = Kernels.get();
+                for (int c = 0; c < channels; c++) {
+                    int packed = kernels.minMax(planes.getPlane(c), stride, x, y, width, height);
+                    min[c] = packed >> 8;
+                    max[c] = packed & 0xFF;
+                }
+            }
+        }
+
+        return new BlockSummary((long) width * height, sums, squares, min, max, histograms);
+    }
+
+    // Parent summary from its children, statistics missing in any part are dropped
+    public static BlockSummary merge(BlockSummary... parts) {
+        Set<Statistic> common = EnumSet.allOf(Statistic.class);
+        for (BlockSummary part : parts) {
+            common.retainAll(part.getStatistics());
+        }
+        int channels = parts[0].channels;
+
+        long count = 0;
+        long[] sums = common.contains(Statistic.SUM) ? new long[channels] : null;
+        long[] squares = common.contains(Statistic.SQUARES) ? new long[channels] : null;
+        int[] min = null;
+        int[] max = null;
+        if (common.contains(Statistic.MIN_MAX)) {
+            min = new int[channels];
+            max = new int[channels];
+            Arrays.fill(min, 255);
+        }
+        int[][] histograms = common.contains(Statistic.HISTOGRAM) ? new int[channels][256] : null;
+
+        for (BlockSummary part : parts) {
+            if (part.channels != channels) {
+                throw new IllegalArgumentException("Summaries have different channel counts");
+            }
+            count += part.count;
+            for (int c = 0; c < channels; c++) {
+                if (sums != null) sums[c] += part.sums[c];
+                if (squares != null) squares[c] += part.squares[c];
+                if (min != null) {
+                    min[c] = Math.min(min[c], part.min[c]);
+                    max[c] = Math.max(max[c], part.max[c]);
+                }
+                if (histograms != null) {
+                    for (int v = 0; v < 256; v++) histograms[c][v] += part.histograms[c][v];
+                }
+            }
+        }
+
+        return new BlockSummary(count, sums, squares, min, max, histograms);
+    }
+
+    public Set<Statistic> getStatistics() {
+        Set<Statistic> statistics = EnumSet.noneOf(Statistic.class);
+        if (sums != null) statistics.add(Statistic.SUM);
+        if (squares != null) statistics.add(Statistic.SQUARES);
+        if (min != null) statistics.add(Statistic.MIN_MAX);
+        if (histograms != null) statistics.add(Statistic.HISTOGRAM);
+        return statistics;
+    }
+
+    // Truncated channel mean, as stored in node colors
+    public int getMean(int channel) {
+        return (int) (getSum(channel) / count);
+    }
+
+    public long getSum(int channel) {
+        return require(sums, Statistic.SUM)[channel];
+    }
+
+    public long getSumOfSquares(int channel) {
+        return require(squares, Statistic.SQUARES)[channel];
+    }
+
+    public int getMin(int channel) {
+        return require(min, Statistic.MIN_MAX)[channel];
+    }
+
+    public int getMax(int channel) {
+        return require(max, Statistic.MIN_MAX)[channel];
+    }
+
+    public int[] getHistogram(int channel) {
+        return require(histograms, Statistic.HISTOGRAM)[channel];
+    }
+
+    private static <T> T require(T values, Statistic statistic) {
+        if (values == null) {
+            throw new IllegalStateException("Summary was computed without " + statistic);
+        }
+        return values;
+    }
+
+    public long getCount() { return count; }
+    public int getChannels() { return channels; }
+}
\ No newline at end of file
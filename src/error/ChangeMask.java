@@ -0,0 +1,77 @@
+package src.error;
+
+import java.awt.Rectangle;
+import src.util.PixelPlanes;
+
+// Integral count of pixels that differ between two frames
+public class ChangeMask {
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final int[] counts;
+    private final Rectangle bounds;
+
+    private ChangeMask(int width, int height, int[] counts, Rectangle bounds) {
+        this.width = width;
+        this.height = height;
+        this.stride = width + 1;
+        this.counts = counts;
+        this.bounds = bounds;
+    }
+
+    // Pixel differs when any channel differs
+    public static ChangeMask compare(PixelPlanes previous, PixelPlanes current) {
+        int width = current.getWidth();
+        int height = current.getHeight();
+        int channels = current.getChannels();
+        if (previous.getWidth() != width || previous.getHeight() != height || previous.getChannels() != channels) {
+            throw new IllegalArgumentException("Frames differ in size or channel count");
+        }
+
+        int stride = width + 1;
+        int[] counts = new int[stride * (height + 1)];
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+
+        for (int y = 0; y < height; y++) {
+            int rowCount = 0;
+            int src = y * width;
+            int above = y * stride + 1;
+            int dst = above + stride;
+            for (int x = 0; x < width; x++) {
+                boolean changed = false;
+                for (int c = 0; c < channels && !changed; c++) {
+                    changed = previous.getPlane(c)[src + x] != current.getPlane(c)[src + x];
+                }
+                if (changed) {
+                    rowCount++;
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                }
+                counts[dst + x] = counts[above + x] + rowCount;
+            }
+            if (rowCount > 0) {
+                minY = Math.min(minY, y);
+                maxY = y;
+            }
+        }
+
+        Rectangle bounds = maxY < 0 ? null : new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        return new ChangeMask(width, height, counts, bounds);
+    }
+
+    // Changed pixels inside block
+    public int count(int x, int y, int blockWidth, int blockHeight) {
+        int top = y * stride + x;
+        int bottom = (y + blockHeight) * stride + x;
+        return counts[bottom + blockWidth] - counts[bottom] - counts[top + blockWidth] + counts[top];
+    }
+
+    public int getChangedPixels() {
+        return count(0, 0, width, height);
+    }
+
+    // Smallest box holding every changed pixel, null when the frames are equal
+    public Rectangle getBounds() { return bounds; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+}
\ No newline at end of file
@@ -1,219 +1,282 @@
 package src.error;
 
-import java.awt.Color;
-import java.awt.image.BufferedImage;
 import java.util.Arrays;
+import src.util.PixelPlanes;
 
 public class ErrorCalculator {
+    // Rows scanned between early-exit checks
+    private static final int STRIP_ROWS = 8;
     
-    // Select error method
-    public static double calculateError(BufferedImage image, int x, int y, int width, int height, ErrorMethod method) {
-        int[] avgColor = calculateAvgColor(image, x, y, width, height);
+    // Select error method from statistics, other metrics read a block summary
+    public static double calculateError(BlockStatistics stats, int x, int y, int width, int height, ErrorMetric metric) {
+        if (!(metric instanceof ErrorMethod)) {
+            return metric.error(BlockSummary.of(stats, x, y, width, height, metric.getStatistics()));
+        }
+        ErrorMethod method = (ErrorMethod) metric;
+        int[] avgColor = calculateAvgColor(stats, x, y, width, height);
         
         switch (method) {
             case VARIANCE:
-                return calculateVariance(image, x, y, width, height, avgColor);
+                return calculateVariance(stats, x, y, width, height, avgColor);
             case MAD:
-                return calculateMAD(image, x, y, width, height, avgColor);
+                return calculateMAD(stats.getPlanes(), x, y, width, height, avgColor);
             case MAX_DIFF:
-                return calculateMaxDiff(image, x, y, width, height);
+                return calculateMaxDiff(stats.getPlanes(), x, y, width, height);
             case ENTROPY:
-                return calculateEntropy(image, x, y, width, height);
+                return calculateEntropy(stats.getPlanes(), x, y, width, height);
             case SSIM:
-                return calculateSSIM(image, x, y, width, height, avgColor);
+                return calculateSSIM(stats, x, y, width, height, avgColor);
             default:
-                return calculateVariance(image, x, y, width, height, avgColor);
+                return calculateVariance(stats, x, y, width, height, avgColor);
+        }
+    }
+    
+    // Exact when at most threshold, otherwise a lower bound above it
+    public static double calculateError(BlockStatistics stats, int x, int y, int width, int height,
+                                        ErrorMetric metric, double threshold) {
+        if (metric == ErrorMethod.MAD) {
+            return boundedMAD(stats, x, y, width, height, threshold);
+        }
+        if (metric == ErrorMethod.MAX_DIFF) {
+            return boundedMaxDiff(stats.getPlanes(), x, y, width, height, threshold);
         }
+        // Variance and SSIM are O(1), entropy has no monotone partial bound
+        return calculateError(stats, x, y, width, height, metric);
+    }
+    
+    // Metrics whose bounded path stops split blocks after a few strips
+    public static boolean exitsEarly(ErrorMetric metric) {
+        return metric == ErrorMethod.MAD || metric == ErrorMethod.MAX_DIFF;
     }
     
-    // Get block's average color
-    public static int[] calculateAvgColor(BufferedImage image, int x, int y, int width, int height) {
-        long rSum = 0, gSum = 0, bSum = 0;
-        int count = 0;
+    // Built-in formulas over a summary, equal to the per-block paths
+    public static double calculateError(BlockSummary summary, ErrorMethod method) {
+        int channels = summary.getChannels();
+        long count = summary.getCount();
+        double total = 0;
         
-        for (int j = y; j < y + height; j++) {
-            for (int i = x; i < x + width; i++) {
-                Color pixel = new Color(image.getRGB(i, j));
-                rSum += pixel.getRed();
-                gSum += pixel.getGreen();
-                bSum += pixel.getBlue();
-                count++;
+        for (int c = 0; c < channels; c++) {
+            switch (method) {
+                case MAD: {
+                    int mean = summary.getMean(c);
+                    int[] histogram = summary.getHistogram(c);
+                    long deviation = 0;
+                    for (int v = 0; v < 256; v++) deviation += (long) histogram[v] * Math.abs(v - mean);
+                    total += (double) deviation / count;
+                    break;
+                }
+                case MAX_DIFF:
+                    total += summary.getMax(c) - summary.getMin(c);
+                    break;
+                case ENTROPY: {
+                    int[] histogram = summary.getHistogram(c);
+                    double entropy = 0;
+                    for (int v = 0; v < 256; v++) {
+                        if (histogram[v] > 0) {
+                            double probability = (double) histogram[v] / count;
+                            entropy -= probability * (Math.log(probability) / Math.log(2));
+                        }
+                    }
+                    total += entropy;
+                    break;
+                }
+                case SSIM: {
+                    final double C1 = Math.pow(0.01 * 255, 2);
+                    final double C2 = Math.pow(0.03 * 255, 2);
+                    double mean = summary.getMean(c);
+                    double varX = (double) squaredDeviation(summary, c) / count;
+                    total += ((2 * mean * mean + C1) * (2 * 0.0 + C2)) /
+                             ((mean * mean + mean * mean + C1) * (varX + 0.0 + C2));
+                    break;
+                }
+                default:
+                    total += (double) squaredDeviation(summary, c) / count;
             }
         }
         
-        return new int[]{
-            (int)(rSum / count),
-            (int)(gSum / count),
-            (int)(bSum / count)
-        };
+        return method == ErrorMethod.SSIM ? 1 - total / channels : total / channels;
+    }
+    
+    private static long squaredDeviation(BlockSummary summary, int c) {
+        int mean = summary.getMean(c);
+        long sum = summary.getSum(c);
+        return summary.getSumOfSquares(c) - 2L * mean * sum + summary.getCount() * mean * mean;
     }
     
-    // Calculate color variance
-    private static double calculateVariance(BufferedImage image, int x, int y, int width, int height, int[] avgColor) {
-        double rVariance = 0, gVariance = 0, bVariance = 0;
+    // Deviation sums only grow, stop once the partial mean passes threshold
+    private static double boundedMAD(BlockStatistics stats, int x, int y, int width, int height, double threshold) {
+        BlockKernels kernels = Kernels.get();
+        PixelPlanes planes = stats.getPlanes();
+        int[] avgColor = calculateAvgColor(stats, x, y, width, height);
         int count = width * height;
+        int stride = planes.getWidth();
+        long[] deviation = new long[avgColor.length];
+        double total = 0;
         
-        for (int j = y; j < y + height; j++) {
-            for (int i = x; i < x + width; i++) {
-                Color pixel = new Color(image.getRGB(i, j));
-                rVariance += Math.pow(pixel.getRed() - avgColor[0], 2);
-                gVariance += Math.pow(pixel.getGreen() - avgColor[1], 2);
-                bVariance += Math.pow(pixel.getBlue() - avgColor[2], 2);
+        for (int row = y; row < y + height; row += STRIP_ROWS) {
+            int rows = Math.min(STRIP_ROWS, y + height - row);
+            total = 0;
+            for (int c = 0; c < avgColor.length; c++) {
+                deviation[c] += kernels.absoluteDeviation(planes.getPlane(c), stride, x, row, width, rows, avgColor[c]);
+                total += (double) deviation[c] / count;
             }
+            if (total / avgColor.length > threshold) break;
         }
         
-        rVariance /= count;
-        gVariance /= count;
-        bVariance /= count;
-        
-        return (rVariance + gVariance + bVariance) / 3;
+        return total / avgColor.length;
     }
     
-    // Mean absolute deviation
-    private static double calculateMAD(BufferedImage image, int x, int y, int width, int height, int[] avgColor) {
-        double rMAD = 0, gMAD = 0, bMAD = 0;
-        int count = width * height;
+    // Ranges only widen, stop once their mean passes threshold
+    private static double boundedMaxDiff(PixelPlanes planes, int x, int y, int width, int height, double threshold) {
+        BlockKernels kernels = Kernels.get();
+        int stride = planes.getWidth();
+        int channels = planes.getChannels();
+        int[] min = new int[channels];
+        int[] max = new int[channels];
+        Arrays.fill(min, 255);
+        double total = 0;
         
-        for (int j = y; j < y + height; j++) {
-            for (int i = x; i < x + width; i++) {
-                Color pixel = new Color(image.getRGB(i, j));
-                rMAD += Math.abs(pixel.getRed() - avgColor[0]);
-                gMAD += Math.abs(pixel.getGreen() - avgColor[1]);
-                bMAD += Math.abs(pixel.getBlue() - avgColor[2]);
+        for (int row = y; row < y + height; row += STRIP_ROWS) {
+            int rows = Math.min(STRIP_ROWS, y + height - row);
+            total = 0;
+            for (int c = 0; c < channels; c++) {
+                int packed = kernels.minMax(planes.getPlane(c), stride, x, row, width, rows);
+                min[c] = Math.min(min[c], packed >> 8);
+                max[c] = Math.max(max[c], packed & 0xFF);
+                total += max[c] - min[c];
             }
+            if (total / channels > threshold) break;
         }
         
-        rMAD /= count;
-        gMAD /= count;
-        bMAD /= count;
-        
-        return (rMAD + gMAD + bMAD) / 3;
-    }
-    
-    // Max color difference
-    private static double calculateMaxDiff(BufferedImage image, int x, int y, int width, int height) {
-        int rMin = 255, gMin = 255, bMin = 255;
-        int rMax = 0, gMax = 0, bMax = 0;
-        
-        for (int j = y; j < y + height; j++) {
-            for (int i = x; i < x + width; i++) {
-                Color pixel = new Color(image.getRGB(i, j));
-                
-                rMin = Math.min(rMin, pixel.getRed());
-                gMin = Math.min(gMin, pixel.getGreen());
-                bMin = Math.min(bMin, pixel.getBlue());
-                
-                rMax = Math.max(rMax, pixel.getRed());
-                gMax = Math.max(gMax, pixel.getGreen());
-                bMax = Math.max(bMax, pixel.getBlue());
+        return total / channels;
+    }
+    
+    // Whether source statistics need sums of squares for this metric
+    public static boolean needsSquares(ErrorMetric metric) {
+        return metric.usesSourcePlanes() && metric.getStatistics().contains(BlockSummary.Statistic.SQUARES);
+    }
+    
+    // Statistics the metric's errors are computed from
+    public static BlockStatistics statisticsFor(ErrorMetric metric, BlockStatistics source) {
+        boolean squares = metric.getStatistics().contains(BlockSummary.Statistic.SQUARES);
+        if (metric.usesSourcePlanes()) {
+            if (squares && !source.hasSquares()) {
+                throw new IllegalArgumentException(metric.getName() + " needs statistics with squares");
             }
+            return source;
         }
+        return BlockStatistics.compute(metric.transform(source.getPlanes()), squares);
+    }
+    
+    // Block average from integral tables
+    public static int[] calculateAvgColor(BlockStatistics stats, int x, int y, int width, int height) {
+        long count = (long) width * height;
+        int[] avgColor = new int[stats.getChannels()];
         
-        double rDiff = rMax - rMin;
-        double gDiff = gMax - gMin;
-        double bDiff = bMax - bMin;
+        for (int c = 0; c < avgColor.length; c++) {
+            avgColor[c] = (int) (stats.sum(c, x, y, width, height) / count);
+        }
         
-        return (rDiff + gDiff + bDiff) / 3;
+        return avgColor;
     }
     
-    // Color distribution entropy
-    private static double calculateEntropy(BufferedImage image, int x, int y, int width, int height) {
-        int[] rHistogram = new int[256];
-        int[] gHistogram = new int[256];
-        int[] bHistogram = new int[256];
+    // Squared deviation from truncated mean
+    private static long squaredDeviation(BlockStatistics stats, int c, int x, int y, int width, int height, int mean) {
+        long count = (long) width * height;
+        long sum = stats.sum(c, x, y, width, height);
+        long sumSq = stats.sumOfSquares(c, x, y, width, height);
+        return sumSq - 2L * mean * sum + count * mean * mean;
+    }
+    
+    // Variance from integral tables
+    private static double calculateVariance(BlockStatistics stats, int x, int y, int width, int height, int[] avgColor) {
+        int count = width * height;
+        double total = 0;
         
-        int totalPixels = width * height;
+        for (int c = 0; c < avgColor.length; c++) {
+            double variance = squaredDeviation(stats, c, x, y, width, height, avgColor[c]);
+            total += variance / count;
+        }
         
-        // Reset histograms
-        Arrays.fill(rHistogram, 0);
-        Arrays.fill(gHistogram, 0);
-        Arrays.fill(bHistogram, 0);
-        
-        // Count colors
-        for (int j = y; j < y + height; j++) {
-            for (int i = x; i < x + width; i++) {
-                Color pixel = new Color(image.getRGB(i, j));
-                rHistogram[pixel.getRed()]++;
-                gHistogram[pixel.getGreen()]++;
-                bHistogram[pixel.getBlue()]++;
-            }
+        return total / avgColor.length;
+    }
+    
+    // Mean absolute deviation over planes
+    private static double calculateMAD(PixelPlanes planes, int x, int y, int width, int height, int[] avgColor) {
+        BlockKernels kernels = Kernels.get();
+        int count = width * height;
+        int stride = planes.getWidth();
+        double total = 0;
+        
+        for (int c = 0; c < avgColor.length; c++) {
+            long deviation = kernels.absoluteDeviation(planes.getPlane(c), stride, x, y, width, height, avgColor[c]);
+            total += (double) deviation / count;
         }
         
-        // Calculate entropy
-        double rEntropy = 0, gEntropy = 0, bEntropy = 0;
+        return total / avgColor.length;
+    }
+    
+    // Max difference over planes
+    private static double calculateMaxDiff(PixelPlanes planes, int x, int y, int width, int height) {
+        BlockKernels kernels = Kernels.get();
+        int stride = planes.getWidth();
+        int channels = planes.getChannels();
+        double total = 0;
+        
+        for (int c = 0; c < channels; c++) {
+            total += kernels.range(planes.getPlane(c), stride, x, y, width, height);
+        }
         
-        for (int i = 0; i < 256; i++) {
-            if (rHistogram[i] > 0) {
-                double probability = (double) rHistogram[i] / totalPixels;
-                rEntropy -= probability * (Math.log(probability) / Math.log(2));
-            }
+        return total / channels;
+    }
+    
+    // Entropy over planes
+    private static double calculateEntropy(PixelPlanes planes, int x, int y, int width, int height) {
+        int stride = planes.getWidth();
+        int channels = planes.getChannels();
+        int totalPixels = width * height;
+        int[] histogram = new int[256];
+        double total = 0;
+        
+        for (int c = 0; c < channels; c++) {
+            byte[] plane = planes.getPlane(c);
+            Arrays.fill(histogram, 0);
             
-            if (gHistogram[i] > 0) {
-                double probability = (double) gHistogram[i] / totalPixels;
-                gEntropy -= probability * (Math.log(probability) / Math.log(2));
+            for (int j = y; j < y + height; j++) {
+                int offset = j * stride;
+                for (int i = x; i < x + width; i++) {
+                    histogram[plane[offset + i] & 0xFF]++;
+                }
             }
             
-            if (bHistogram[i] > 0) {
-                double probability = (double) bHistogram[i] / totalPixels;
-                bEntropy -= probability * (Math.log(probability) / Math.log(2));
+            double entropy = 0;
+            for (int i = 0; i < 256; i++) {
+                if (histogram[i] > 0) {
+                    double probability = (double) histogram[i] / totalPixels;
+                    entropy -= probability * (Math.log(probability) / Math.log(2));
+                }
             }
+            total += entropy;
         }
         
-        return (rEntropy + gEntropy + bEntropy) / 3;
+        return total / channels;
     }
     
-    // Structural similarity index
-    private static double calculateSSIM(BufferedImage image, int x, int y, int width, int height, int[] avgColor) {
+    // SSIM against flat block from integral tables
+    private static double calculateSSIM(BlockStatistics stats, int x, int y, int width, int height, int[] avgColor) {
         final double C1 = Math.pow(0.01 * 255, 2);
         final double C2 = Math.pow(0.03 * 255, 2);
-        
-        BufferedImage avgImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        int avgRGB = new Color(avgColor[0], avgColor[1], avgColor[2]).getRGB();
-        for (int j = 0; j < height; j++) {
-            for (int i = 0; i < width; i++) {
-                avgImage.setRGB(i, j, avgRGB);
-            }
-        }
-        
-        double[] meanX = new double[3];
-        double[] meanY = new double[3];
-        double[] varX = new double[3];
-        double[] covarXY = new double[3];
-        
-        meanX[0] = meanY[0] = avgColor[0];
-        meanX[1] = meanY[1] = avgColor[1];
-        meanX[2] = meanY[2] = avgColor[2];
-        
-        for (int j = y; j < y + height; j++) {
-            for (int i = x; i < x + width; i++) {
-                Color pixel = new Color(image.getRGB(i, j));
-                
-                varX[0] += Math.pow(pixel.getRed() - meanX[0], 2);
-                varX[1] += Math.pow(pixel.getGreen() - meanX[1], 2);
-                varX[2] += Math.pow(pixel.getBlue() - meanX[2], 2);
-                
-                covarXY[0] += (pixel.getRed() - meanX[0]) * (avgColor[0] - meanY[0]);
-                covarXY[1] += (pixel.getGreen() - meanX[1]) * (avgColor[1] - meanY[1]);
-                covarXY[2] += (pixel.getBlue() - meanX[2]) * (avgColor[2] - meanY[2]);
-            }
-        }
-        
         int n = width * height;
-        for (int i = 0; i < 3; i++) {
-            varX[i] /= n;
-            covarXY[i] /= n;
-        }
+        double total = 0;
         
-        double[] varY = {0, 0, 0};
-
-        double[] ssim = new double[3];
-        for (int i = 0; i < 3; i++) {
-            ssim[i] = ((2 * meanX[i] * meanY[i] + C1) * (2 * covarXY[i] + C2)) / 
-                      ((meanX[i] * meanX[i] + meanY[i] * meanY[i] + C1) * (varX[i] + varY[i] + C2));
+        // Covariance with a flat block is zero
+        for (int c = 0; c < avgColor.length; c++) {
+            double mean = avgColor[c];
+            double varX = (double) squaredDeviation(stats, c, x, y, width, height, avgColor[c]) / n;
+            total += ((2 * mean * mean + C1) * (2 * 0.0 + C2)) /
+                     ((mean * mean + mean * mean + C1) * (varX + 0.0 + C2));
         }
         
-        double ssimRGB = (ssim[0] + ssim[1] + ssim[2]) / 3;
-
-        return 1 - ssimRGB;
+        return 1 - total / avgColor.length;
     }
 }
\ No newline at end of file
@@ -1,7 +1,10 @@
 package src.error;
 
-// Error method options
-public enum ErrorMethod {
+import java.util.EnumSet;
+import java.util.Set;
+
+// Built-in error methods
+public enum ErrorMethod implements ErrorMetric {
     VARIANCE(1, "Variance"),
     MAD(2, "Mean Absolute Deviation"),
     MAX_DIFF(3, "Max Pixel Difference"),
@@ -18,15 +21,50 @@ public enum ErrorMethod {
     }
     
     // Get method id
+    @Override
     public int getId() {
         return id;
     }
     
     // Get method name
+    @Override
     public String getName() {
         return name;
     }
     
+    // Statistics the summary formulas read
+    @Override
+    public Set<BlockSummary.Statistic> getStatistics() {
+        switch (this) {
+            case VARIANCE:
+            case SSIM:
+                return EnumSet.of(BlockSummary.Statistic.SUM, BlockSummary.Statistic.SQUARES);
+            case MAD:
+                return EnumSet.of(BlockSummary.Statistic.SUM, BlockSummary.Statistic.HISTOGRAM);
+            case MAX_DIFF:
+                return EnumSet.of(BlockSummary.Statistic.MIN_MAX);
+            default:
+                return EnumSet.of(BlockSummary.Statistic.HISTOGRAM);
+        }
+    }
+    
+    @Override
+    public double error(BlockSummary summary) {
+        return ErrorCalculator.calculateError(summary, this);
+    }
+    
+    // Range suggestions
+    @Override
+    public String getThresholdHint() {
+        switch (this) {
+            case VARIANCE: return "Suggested range: 10-1000";
+            case MAD:      return "Suggested range: 5-100";
+            case MAX_DIFF: return "Suggested range: 10-200";
+            case ENTROPY:  return "Suggested range: 0.1-5.0";
+            default:       return "Suggested range: 0.01-0.5";
+        }
+    }
+    
     // Find by id
     public static ErrorMethod getById(int id) {
         for (ErrorMethod method : values()) {
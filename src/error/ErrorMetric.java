@@ -0,0 +1,36 @@
+package src.error;
+
+import java.util.Set;
+import src.util.PixelPlanes;
+
+// Block error derived only from mergeable sufficient statistics
+public interface ErrorMetric {
+    // Stable id, used for selection and in tree files
+    int getId();
+
+    String getName();
+
+    // Statistics error() reads, the engine computes nothing else
+    Set<BlockSummary.Statistic> getStatistics();
+
+    double error(BlockSummary summary);
+
+    // Parent summary from its four quadrants, lets the build skip rescanning large blocks
+    default BlockSummary merge(BlockSummary... parts) {
+        return BlockSummary.merge(parts);
+    }
+
+    // False when statistics are taken over transform() planes instead of the source
+    default boolean usesSourcePlanes() {
+        return true;
+    }
+
+    // Planes the statistics are taken over, same size as the source
+    default PixelPlanes transform(PixelPlanes source) {
+        return source;
+    }
+
+    default String getThresholdHint() {
+        return "Enter a positive number";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,52 @@
+package src.error;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+
+// Registry of selectable metrics: built-ins, Lab distance and ServiceLoader providers
+public class ErrorMetrics {
+    private static final List<ErrorMetric> METRICS = new ArrayList<>();
+
+    static {
+        for (ErrorMethod method : ErrorMethod.values()) {
+            register(method);
+        }
+        register(new LabDistance());
+        for (ErrorMetric metric : ServiceLoader.load(ErrorMetric.class)) {
+            register(metric);
+        }
+    }
+
+    public static synchronized void register(ErrorMetric metric) {
+        if (getById(metric.getId()) != null) {
+            throw new IllegalArgumentException("Error metric id " + metric.getId() + " is already registered");
+        }
+        METRICS.add(metric);
+    }
+
+    // Find by id, null when unknown
+    public static synchronized ErrorMetric getById(int id) {
+        for (ErrorMetric metric : METRICS) {
+            if (metric.getId() == id) {
+                return metric;
+            }
+        }
+        return null;
+    }
+
+    public static synchronized List<ErrorMetric> all() {
+        return Collections.unmodifiableList(new ArrayList<>(METRICS));
+    }
+
+    // List all metrics
+    public static synchronized String getAvailableMethods() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Available error measurement methods:\n");
+        for (ErrorMetric metric : METRICS) {
+            sb.append(metric.getId()).append(". ").append(metric.getName()).append("\n");
+        }
+        return sb.toString();
+    }
+}
\ No newline at end of file
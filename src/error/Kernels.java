@@ -0,0 +1,26 @@
+package src.error;
+
+// Kernel selection at startup
+public class Kernels {
+    private static final BlockKernels INSTANCE = select();
+
+    private Kernels() {
+    }
+
+    public static BlockKernels get() {
+        return INSTANCE;
+    }
+
+    // Vector API when the module is present, else scalar
+    private static BlockKernels select() {
+        if ("scalar".equalsIgnoreCase(System.getProperty("quadtree.kernels"))) {
+            return new ScalarKernels();
+        }
+
+        try {
+            return (BlockKernels) Class.forName("src.error.VectorKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarKernels();
+        }
+    }
+}
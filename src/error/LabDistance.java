@@ -0,0 +1,108 @@
+package src.error;
+
+import java.util.EnumSet;
+import java.util.Set;
+import src.util.PixelPlanes;
+
+// RMS CIE76 distance to the block's mean Lab color, statistics taken over Lab planes
+public class LabDistance implements ErrorMetric {
+    public static final int ID = 6;
+
+    // L is stored as L * 2.55, a and b offset by 128
+    private static final double L_SCALE = 2.55;
+
+    // sRGB byte to linear light
+    private static final double[] LINEAR = new double[256];
+
+    static {
+        for (int v = 0; v < 256; v++) {
+            double c = v / 255.0;
+            LINEAR[v] = c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+        }
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "Lab Color Distance (CIE76)";
+    }
+
+    @Override
+    public Set<BlockSummary.Statistic> getStatistics() {
+        return EnumSet.of(BlockSummary.Statistic.SUM, BlockSummary.Statistic.SQUARES);
+    }
+
+    // Root of the summed Lab variances, L rescaled to its own units
+    @Override
+    public double error(BlockSummary summary) {
+        double n = summary.getCount();
+        double total = 0;
+        for (int c = 0; c < summary.getChannels(); c++) {
+            double sum = summary.getSum(c);
+            double variance = (summary.getSumOfSquares(c) - sum * sum / n) / n;
+            total += c == 0 ? variance / (L_SCALE * L_SCALE) : variance;
+        }
+        return Math.sqrt(Math.max(0, total));
+    }
+
+    @Override
+    public boolean usesSourcePlanes() {
+        return false;
+    }
+
+    // RGB planes to Lab planes, D65 white, gray planes to L alone
+    @Override
+    public PixelPlanes transform(PixelPlanes source) {
+        int pixels = source.getWidth() * source.getHeight();
+
+        // Gray has a = b = 0, only lightness varies
+        if (source.getChannels() == 1) {
+            byte[] lightness = new byte[256];
+            for (int v = 0; v < 256; v++) lightness[v] = clamp((116 * f(LINEAR[v]) - 16) * L_SCALE);
+            byte[] gray = source.getPlane(0);
+            byte[] l = new byte[pixels];
+            for (int i = 0; i < pixels; i++) l[i] = lightness[gray[i] & 0xFF];
+            return new PixelPlanes(source.getWidth(), source.getHeight(), new byte[][] { l });
+        }
+        if (source.getChannels() != 3) {
+            throw new IllegalArgumentException("Lab distance needs RGB or gray planes");
+        }
+        byte[] red = source.getPlane(0);
+        byte[] green = source.getPlane(1);
+        byte[] blue = source.getPlane(2);
+        byte[][] lab = new byte[3][pixels];
+
+        for (int i = 0; i < pixels; i++) {
+            double r = LINEAR[red[i] & 0xFF];
+            double g = LINEAR[green[i] & 0xFF];
+            double b = LINEAR[blue[i] & 0xFF];
+
+            double fx = f((0.4124 * r + 0.3576 * g + 0.1805 * b) / 0.95047);
+            double fy = f(0.2126 * r + 0.7152 * g + 0.0722 * b);
+            double fz = f((0.0193 * r + 0.1192 * g + 0.9505 * b) / 1.08883);
+
+            lab[0][i] = clamp((116 * fy - 16) * L_SCALE);
+            lab[1][i] = clamp(500 * (fx - fy) + 128);
+            lab[2][i] = clamp(200 * (fy - fz) + 128);
+        }
+
+        return new PixelPlanes(source.getWidth(), source.getHeight(), lab);
+    }
+
+    private static double f(double t) {
+        return t > 216.0 / 24389 ? Math.cbrt(t) : (24389.0 / 27 * t + 16) / 116;
+    }
+
+    private static byte clamp(double value) {
+        return (byte) Math.max(0, Math.min(255, (int) Math.round(value)));
+    }
+
+    @Override
+    public String getThresholdHint() {
+        return "Suggested range: 1-30";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,126 @@
+package src.error;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import src.util.OffHeapLongArray;
+import src.util.PixelPlanes;
+
+// Integral tables outside the heap, in direct memory or a mapped scratch file
+public class OffHeapStatistics extends BlockStatistics {
+    private final long stride;
+    private final OffHeapLongArray[] sums;
+    private final OffHeapLongArray[] squares;
+
+    public OffHeapStatistics(PixelPlanes planes, OffHeapLongArray[] sums, OffHeapLongArray[] squares) {
+        super(planes, null, null);
+        this.stride = planes.getWidth() + 1L;
+        this.sums = sums;
+        this.squares = squares;
+    }
+
+    // Same pass as BlockStatistics.compute, rows staged on heap then copied out; null directory means direct memory
+    public static OffHeapStatistics compute(PixelPlanes planes, boolean withSquares, File scratchDirectory)
+            throws IOException {
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        int channels = planes.getChannels();
+        long cells = (width + 1L) * (height + 1L);
+
+        OffHeapLongArray[] sums = new OffHeapLongArray[channels];
+        OffHeapLongArray[] squares = withSquares ? new OffHeapLongArray[channels] : null;
+        if (scratchDirectory == null) {
+            for (int c = 0; c < channels; c++) {
+                sums[c] = OffHeapLongArray.allocateDirect(cells);
+                if (withSquares) squares[c] = OffHeapLongArray.allocateDirect(cells);
+            }
+        } else {
+            // Mappings outlive the channel, the unlinked file is reclaimed once they are collected
+            File file = File.createTempFile("stats", ".bin", scratchDirectory);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                 FileChannel channel = raf.getChannel()) {
+                long tableBytes = 8 * cells;
+                raf.setLength(tableBytes * channels * (withSquares ? 2 : 1));
+                long position = 0;
+                for (int c = 0; c < channels; c++) {
+                    sums[c] = OffHeapLongArray.map(channel, FileChannel.MapMode.READ_WRITE, position, cells);
+                    position += tableBytes;
+                    if (withSquares) {
+                        squares[c] = OffHeapLongArray.map(channel, FileChannel.MapMode.READ_WRITE, position, cells);
+                        position += tableBytes;
+                    }
+                }
+            } finally {
+                if (!file.delete()) file.deleteOnExit();
+            }
+        }
+
+        long[] sumRow = new long[width + 1];
+        long[] squareRow = withSquares ? new long[width + 1] : null;
+        for (int c = 0; c < channels; c++) {
+            byte[] plane = planes.getPlane(c);
+            Arrays.fill(sumRow, 0);
+            if (squareRow != null) Arrays.fill(squareRow, 0);
+
+            // Row y + 1 is row y plus this row's running sums
+            for (int y = 0; y < height; y++) {
+                long rowSum = 0, rowSquare = 0;
+                int src = y * width;
+                for (int x = 0; x < width; x++) {
+                    int v = plane[src + x] & 0xFF;
+                    rowSum += v;
+                    sumRow[x + 1] += rowSum;
+                    if (squareRow != null) {
+                        rowSquare += v * v;
+                        squareRow[x + 1] += rowSquare;
+                    }
+                }
+                long offset = (y + 1L) * (width + 1L);
+                sums[c].put(offset, sumRow, 0, sumRow.length);
+                if (squareRow != null) squares[c].put(offset, squareRow, 0, squareRow.length);
+            }
+        }
+
+        return new OffHeapStatistics(planes, sums, squares);
+    }
+
+    @Override
+    public long sum(int channel, int x, int y, int width, int height) {
+        return rect(sums[channel], x, y, width, height);
+    }
+
+    @Override
+    public long sumOfSquares(int channel, int x, int y, int width, int height) {
+        if (squares == null) {
+            throw new IllegalStateException("Statistics were computed without squares");
+        }
+        return rect(squares[channel], x, y, width, height);
+    }
+
+    private long rect(OffHeapLongArray table, int x, int y, int width, int height) {
+        long top = y * stride + x;
+        long bottom = (y + height) * stride + x;
+        return table.get(bottom + width) - table.get(bottom) - table.get(top + width) + table.get(top);
+    }
+
+    @Override
+    public boolean hasSquares() {
+        return squares != null;
+    }
+
+    public OffHeapLongArray getSums(int channel) { return sums[channel]; }
+    public OffHeapLongArray getSquares(int channel) { return squares[channel]; }
+
+    // No flat table exists off the heap
+    @Override
+    public long[] getSumTable(int channel) {
+        throw new IllegalStateException("Off-heap statistics have no flat sum table");
+    }
+
+    @Override
+    public long[] getSquareTable(int channel) {
+        throw new IllegalStateException("Off-heap statistics have no flat square table");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,127 @@
+package src.error;
+
+import src.util.PixelPlanes;
+
+// Integral tables corrected by a delta table over one dirty box
+public class PatchedStatistics extends BlockStatistics {
+    private static final int MAX_LAYERS = 16;
+
+    private final BlockStatistics base;
+    private final int layers;
+    private final long patchedArea;
+    private final int boxX, boxY, boxWidth, boxHeight;
+    private final int boxStride;
+    private final long[][] sumDelta;
+    private final long[][] squareDelta;
+
+    private PatchedStatistics(BlockStatistics base, PixelPlanes edited, int boxX, int boxY, int boxWidth, int boxHeight) {
+        super(edited, null, null);
+        this.base = base;
+        this.layers = base instanceof PatchedStatistics ? ((PatchedStatistics) base).layers + 1 : 1;
+        this.patchedArea = (long) boxWidth * boxHeight
+            + (base instanceof PatchedStatistics ? ((PatchedStatistics) base).patchedArea : 0);
+        this.boxX = boxX;
+        this.boxY = boxY;
+        this.boxWidth = boxWidth;
+        this.boxHeight = boxHeight;
+        this.boxStride = boxWidth + 1;
+
+        int channels = base.getChannels();
+        this.sumDelta = new long[channels][];
+        this.squareDelta = base.hasSquares() ? new long[channels][] : null;
+        for (int c = 0; c < channels; c++) {
+            buildDelta(c);
+        }
+    }
+
+    // Edited planes differ from the base's planes only inside the box, cost is the dirty box area
+    public static BlockStatistics patch(BlockStatistics stats, PixelPlanes edited, int x, int y, int width, int height) {
+        int layers = 1;
+        long area = (long) width * height;
+        if (stats instanceof PatchedStatistics) {
+            layers += ((PatchedStatistics) stats).layers;
+            area += ((PatchedStatistics) stats).patchedArea;
+        }
+
+        // Long chains or large patched area cost as much as a full rebuild
+        if (layers > MAX_LAYERS || area * 4 > (long) stats.getWidth() * stats.getHeight()) {
+            return BlockStatistics.compute(edited, stats.hasSquares());
+        }
+        return new PatchedStatistics(stats, edited, x, y, width, height);
+    }
+
+    // New prefix sums minus the previous layer's prefix sums
+    private void buildDelta(int channel) {
+        byte[] plane = getPlanes().getPlane(channel);
+        int width = getWidth();
+        long[] sum = new long[boxStride * (boxHeight + 1)];
+        long[] square = squareDelta != null ? new long[sum.length] : null;
+
+        for (int row = 0; row < boxHeight; row++) {
+            long rowSum = 0, rowSquare = 0;
+            int src = (boxY + row) * width + boxX;
+            int above = row * boxStride + 1;
+            int dst = above + boxStride;
+            for (int col = 0; col < boxWidth; col++) {
+                int v = plane[src + col] & 0xFF;
+                rowSum += v;
+                sum[dst + col] = sum[above + col] + rowSum;
+                if (square != null) {
+                    rowSquare += v * v;
+                    square[dst + col] = square[above + col] + rowSquare;
+                }
+            }
+        }
+
+        for (int row = 1; row <= boxHeight; row++) {
+            for (int col = 1; col <= boxWidth; col++) {
+                int i = row * boxStride + col;
+                sum[i] -= base.sum(channel, boxX, boxY, col, row);
+                if (square != null) square[i] -= base.sumOfSquares(channel, boxX, boxY, col, row);
+            }
+        }
+
+        sumDelta[channel] = sum;
+        if (square != null) squareDelta[channel] = square;
+    }
+
+    @Override
+    public long sum(int channel, int x, int y, int width, int height) {
+        return base.sum(channel, x, y, width, height) + delta(sumDelta[channel], x, y, width, height);
+    }
+
+    @Override
+    public long sumOfSquares(int channel, int x, int y, int width, int height) {
+        long value = base.sumOfSquares(channel, x, y, width, height);
+        return value + delta(squareDelta[channel], x, y, width, height);
+    }
+
+    // Correction over the block's overlap with the box
+    private long delta(long[] table, int x, int y, int width, int height) {
+        int x0 = Math.max(x, boxX) - boxX;
+        int y0 = Math.max(y, boxY) - boxY;
+        int x1 = Math.min(x + width, boxX + boxWidth) - boxX;
+        int y1 = Math.min(y + height, boxY + boxHeight) - boxY;
+        if (x1 <= x0 || y1 <= y0) return 0;
+
+        int top = y0 * boxStride;
+        int bottom = y1 * boxStride;
+        return table[bottom + x1] - table[bottom + x0] - table[top + x1] + table[top + x0];
+    }
+
+    @Override
+    public boolean hasSquares() {
+        return base.hasSquares();
+    }
+
+    // No flat table exists while patched
+    @Override
+    public long[] getSumTable(int channel) {
+        throw new IllegalStateException("Patched statistics have no flat sum table");
+    }
+
+    @Override
+    public long[] getSquareTable(int channel) {
+        throw new IllegalStateException("Patched statistics have no flat square table");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,42 @@
+package src.error;
+
+// Plain loop kernels, always available
+public class ScalarKernels implements BlockKernels {
+
+    @Override
+    public long absoluteDeviation(byte[] plane, int stride, int x, int y, int width, int height, int mean) {
+        long total = 0;
+        for (int j = y; j < y + height; j++) {
+            int offset = j * stride;
+            for (int i = x; i < x + width; i++) {
+                total += Math.abs((plane[offset + i] & 0xFF) - mean);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public int range(byte[] plane, int stride, int x, int y, int width, int height) {
+        int packed = minMax(plane, stride, x, y, width, height);
+        return (packed & 0xFF) - (packed >> 8);
+    }
+
+    @Override
+    public int minMax(byte[] plane, int stride, int x, int y, int width, int height) {
+        int min = 255, max = 0;
+        for (int j = y; j < y + height; j++) {
+            int offset = j * stride;
+            for (int i = x; i < x + width; i++) {
+                int v = plane[offset + i] & 0xFF;
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+        }
+        return (min << 8) | max;
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,93 @@
+package src.error;
+
+import java.util.Set;
+
+// Summaries of the large blocks of a midpoint quadtree, each merged from its four quadrants
+public class SummaryPyramid {
+    // Merging costs a quarter of rescanning a block this size, and stored histograms stay under a byte per pixel
+    private static final long HISTOGRAM_AREA = 4096;
+    // Min/max merge in O(channels), only the entry objects limit how deep they go
+    private static final long MIN_MAX_AREA = 256;
+
+    private final BlockStatistics stats;
+    private final ErrorMetric metric;
+    private final Set<BlockSummary.Statistic> statistics;
+    private final int minBlockSize;
+    private final long minArea;
+    private final Entry root;
+
+    private static final class Entry {
+        final int x, y, width, height;
+        final BlockSummary summary;
+        final Entry[] children;
+
+        Entry(int x, int y, int width, int height, BlockSummary summary, Entry[] children) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.summary = summary;
+            this.children = children;
+        }
+    }
+
+    private SummaryPyramid(BlockStatistics stats, ErrorMetric metric, int minBlockSize) {
+        this.stats = stats;
+        this.metric = metric;
+        this.statistics = metric.getStatistics();
+        this.minBlockSize = minBlockSize;
+        this.minArea = statistics.contains(BlockSummary.Statistic.HISTOGRAM) ? HISTOGRAM_AREA : MIN_MAX_AREA;
+        this.root = build(0, 0, stats.getWidth(), stats.getHeight());
+    }
+
+    // Null when the metric only reads sums and squares, the integral tables give those in O(1)
+    public static SummaryPyramid build(BlockStatistics stats, ErrorMetric metric, int minBlockSize) {
+        Set<BlockSummary.Statistic> statistics = metric.getStatistics();
+        if (!statistics.contains(BlockSummary.Statistic.HISTOGRAM) && !statistics.contains(BlockSummary.Statistic.MIN_MAX)) {
+            return null;
+        }
+        return new SummaryPyramid(stats, metric, minBlockSize);
+    }
+
+    // Each pixel is scanned once, in the smallest blocks, larger blocks merge their quadrants
+    private Entry build(int x, int y, int width, int height) {
+        boolean canSplit = width > minBlockSize && height > minBlockSize;
+        if (!canSplit || (long) width * height < minArea) {
+            return new Entry(x, y, width, height, BlockSummary.of(stats, x, y, width, height, statistics), null);
+        }
+
+        // Same cut as the midpoint rule, odd remainder goes right and down
+        int halfWidth = width / 2;
+        int halfHeight = height / 2;
+        int restWidth = width - halfWidth;
+        int restHeight = height - halfHeight;
+        Entry[] children = {
+            build(x, y, halfWidth, halfHeight),
+            build(x + halfWidth, y, restWidth, halfHeight),
+            build(x, y + halfHeight, halfWidth, restHeight),
+            build(x + halfWidth, y + halfHeight, restWidth, restHeight)
+        };
+        BlockSummary summary = metric.merge(children[0].summary, children[1].summary,
+            children[2].summary, children[3].summary);
+
+        // Quadrants below the limit were only scanned to be merged
+        boolean keep = (long) halfWidth * halfHeight >= minArea;
+        return new Entry(x, y, width, height, summary, keep ? children : null);
+    }
+
+    // Summary of exactly this block, null when it is not in the pyramid
+    public BlockSummary get(int x, int y, int width, int height) {
+        Entry entry = root;
+        while (entry != null) {
+            if (entry.x == x && entry.y == y && entry.width == width && entry.height == height) {
+                return entry.summary;
+            }
+            if (entry.children == null) {
+                return null;
+            }
+            int quadrant = (x >= entry.children[1].x ? 1 : 0) + (y >= entry.children[2].y ? 2 : 0);
+            entry = entry.children[quadrant];
+        }
+        return null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+package src.error;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// Vector API kernels, needs --add-modules jdk.incubator.vector
+public class VectorKernels implements BlockKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES =
+        VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.length() * 8));
+    private static final int LANES = INTS.length();
+    private static final ScalarKernels NARROW = new ScalarKernels();
+
+    // Unsigned bytes widened to int lanes
+    private static IntVector load(byte[] plane, int offset) {
+        return ((IntVector) ByteVector.fromArray(BYTES, plane, offset)
+            .convertShape(VectorOperators.B2I, INTS, 0)).and(0xFF);
+    }
+
+    @Override
+    public long absoluteDeviation(byte[] plane, int stride, int x, int y, int width, int height, int mean) {
+        if (width < LANES) return NARROW.absoluteDeviation(plane, stride, x, y, width, height, mean);
+
+        long total = 0;
+        for (int j = y; j < y + height; j++) {
+            int offset = j * stride;
+            int end = offset + x + width;
+            int i = offset + x;
+            IntVector acc = IntVector.zero(INTS);
+            for (; i + LANES <= end; i += LANES) {
+                acc = acc.add(load(plane, i).sub(mean).abs());
+            }
+            total += acc.reduceLanesToLong(VectorOperators.ADD);
+            for (; i < end; i++) {
+                total += Math.abs((plane[i] & 0xFF) - mean);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public int range(byte[] plane, int stride, int x, int y, int width, int height) {
+        int packed = minMax(plane, stride, x, y, width, height);
+        return (packed & 0xFF) - (packed >> 8);
+    }
+
+    @Override
+    public int minMax(byte[] plane, int stride, int x, int y, int width, int height) {
+        if (width < LANES) return NARROW.minMax(plane, stride, x, y, width, height);
+
+        int lo = 255, hi = 0;
+        for (int j = y; j < y + height; j++) {
+            int offset = j * stride;
+            int end = offset + x + width;
+            int i = offset + x;
+            IntVector min = IntVector.broadcast(INTS, 255);
+            IntVector max = IntVector.zero(INTS);
+            for (; i + LANES <= end; i += LANES) {
+                IntVector v = load(plane, i);
+                min = min.min(v);
+                max = max.max(v);
+            }
+            lo = Math.min(lo, min.reduceLanes(VectorOperators.MIN));
+            hi = Math.max(hi, max.reduceLanes(VectorOperators.MAX));
+            for (; i < end; i++) {
+                int v = plane[i] & 0xFF;
+                if (v < lo) lo = v;
+                if (v > hi) hi = v;
+            }
+        }
+        return (lo << 8) | hi;
+    }
+
+    @Override
+    public String getName() {
+        return "vector-" + INTS.vectorBitSize() + "bit";
+    }
+}
@@ -0,0 +1,337 @@
+package src.model;
+
+import java.util.Arrays;
+
+// Leaf colors clustered into at most 256 entries, area-weighted median cut refined by k-means
+public class LeafPalette {
+    public static final int MAX_COLORS = 256;
+    private static final int REFINE_ROUNDS = 6;
+
+    private final int[][] colors;
+    private final int[] sortedColors;
+    private final int[] sortedEntries;
+    private final int[] leafColors;
+    private final byte[] leafEntries;
+    private final int leafCount;
+    private final int distinctColors;
+    private final double addedError;
+
+    // Leaf colors arrive sorted, entries are sorted here for lookups of already quantized colors
+    private LeafPalette(int[][] colors, int[] leafColors, int[] assignment, int leafCount, double addedError) {
+        this.colors = colors;
+        this.leafColors = leafColors;
+        this.leafEntries = new byte[leafColors.length];
+        for (int i = 0; i < leafColors.length; i++) leafEntries[i] = (byte) assignment[i];
+        this.leafCount = leafCount;
+        this.distinctColors = leafColors.length;
+        this.addedError = addedError;
+
+        long[] keys = new long[colors.length];
+        for (int i = 0; i < colors.length; i++) keys[i] = ((long) LinearQuadtree.packColor(colors[i]) << 32) | i;
+        Arrays.sort(keys);
+        this.sortedColors = new int[colors.length];
+        this.sortedEntries = new int[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            sortedColors[i] = (int) (keys[i] >>> 32);
+            sortedEntries[i] = (int) keys[i];
+        }
+    }
+
+    // Palette for the leaves of a tree
+    public static LeafPalette build(Quadtree tree, int maxColors) {
+        if (maxColors < 1 || maxColors > MAX_COLORS) {
+            throw new IllegalArgumentException("Palette size must be between 1 and " + MAX_COLORS);
+        }
+        if (tree.getRoot() == null) {
+            throw new IllegalArgumentException("Tree has no leaves");
+        }
+
+        // Leaf colors and areas in traversal order
+        int channels = tree.getRoot().getAvgColor().length;
+        int leafCount = countLeaves(tree.getRoot());
+        int[] leafColors = new int[leafCount];
+        long[] leafAreas = new long[leafCount];
+        collectLeaves(tree.getRoot(), leafColors, leafAreas, new int[1]);
+
+        // Distinct colors carry the summed area of their leaves
+        long[] keys = new long[leafCount];
+        for (int i = 0; i < leafCount; i++) keys[i] = ((long) leafColors[i] << 32) | i;
+        Arrays.sort(keys);
+        int[][] points = new int[leafCount][];
+        int[] packed = new int[leafCount];
+        long[] weights = new long[leafCount];
+        int distinct = 0;
+        for (int i = 0; i < leafCount; i++) {
+            int rgb = (int) (keys[i] >>> 32);
+            long area = leafAreas[(int) keys[i]];
+            if (distinct > 0 && packed[distinct - 1] == rgb) {
+                weights[distinct - 1] += area;
+            } else {
+                points[distinct] = channels == 1 ? new int[] { rgb & 0xFF } : LinearQuadtree.unpackColor(rgb);
+                packed[distinct] = rgb;
+                weights[distinct++] = area;
+            }
+        }
+        points = Arrays.copyOf(points, distinct);
+        packed = Arrays.copyOf(packed, distinct);
+        weights = Arrays.copyOf(weights, distinct);
+
+        // Few enough colors to keep exactly
+        if (distinct <= maxColors) {
+            int[] identity = new int[distinct];
+            for (int i = 0; i < distinct; i++) identity[i] = i;
+            return new LeafPalette(points, packed, identity, leafCount, 0);
+        }
+
+        int[] assignment = medianCut(points, weights, maxColors);
+        int[][] centroids = centroids(points, weights, assignment, maxColors, null);
+        for (int round = 0; round < REFINE_ROUNDS; round++) {
+            if (!assignNearest(points, centroids, assignment)) break;
+            centroids = centroids(points, weights, assignment, maxColors, centroids);
+        }
+        assignNearest(points, centroids, assignment);
+
+        // Area-weighted squared distance each pixel moves
+        double squaredError = 0;
+        long totalArea = 0;
+        for (int i = 0; i < distinct; i++) {
+            squaredError += weights[i] * (double) distance(points[i], centroids[assignment[i]], Integer.MAX_VALUE);
+            totalArea += weights[i];
+        }
+        return new LeafPalette(centroids, packed, assignment, leafCount, squaredError / totalArea);
+    }
+
+    // Split the box with the largest weighted spread at its weighted median, until maxColors boxes
+    private static int[] medianCut(int[][] points, long[] weights, int maxColors) {
+        int n = points.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+
+        int[] lo = new int[maxColors];
+        int[] hi = new int[maxColors];
+        double[] spread = new double[maxColors];
+        int boxes = 1;
+        hi[0] = n;
+        spread[0] = spread(points, weights, order, 0, n);
+
+        while (boxes < maxColors) {
+            int box = -1;
+            for (int b = 0; b < boxes; b++) {
+                if (hi[b] - lo[b] > 1 && (box < 0 || spread[b] > spread[box])) box = b;
+            }
+            if (box < 0 || spread[box] == 0) break;
+
+            int axis = widestAxis(points, order, lo[box], hi[box]);
+            sortByAxis(points, order, lo[box], hi[box], axis);
+
+            // Half the box area on each side, both sides non-empty
+            long total = 0;
+            for (int i = lo[box]; i < hi[box]; i++) total += weights[order[i]];
+            long running = 0;
+            int cut = lo[box] + 1;
+            for (int i = lo[box]; i < hi[box] - 1; i++) {
+                running += weights[order[i]];
+                cut = i + 1;
+                if (2 * running >= total) break;
+            }
+
+            lo[boxes] = cut;
+            hi[boxes] = hi[box];
+            hi[box] = cut;
+            spread[box] = spread(points, weights, order, lo[box], hi[box]);
+            spread[boxes] = spread(points, weights, order, lo[boxes], hi[boxes]);
+            boxes++;
+        }
+
+        int[] assignment = new int[n];
+        for (int b = 0; b < boxes; b++) {
+            for (int i = lo[b]; i < hi[b]; i++) assignment[order[i]] = b;
+        }
+        return assignment;
+    }
+
+    // Weighted sum of squared distances to the box mean
+    private static double spread(int[][] points, long[] weights, int[] order, int lo, int hi) {
+        int channels = points[order[lo]].length;
+        double area = 0;
+        double[] sum = new double[channels];
+        double[] square = new double[channels];
+        for (int i = lo; i < hi; i++) {
+            int[] p = points[order[i]];
+            long w = weights[order[i]];
+            area += w;
+            for (int c = 0; c < channels; c++) {
+                sum[c] += (double) w * p[c];
+                square[c] += (double) w * p[c] * p[c];
+            }
+        }
+        double total = 0;
+        for (int c = 0; c < channels; c++) total += square[c] - sum[c] * sum[c] / area;
+        return total;
+    }
+
+    private static int widestAxis(int[][] points, int[] order, int lo, int hi) {
+        int channels = points[order[lo]].length;
+        int best = 0, bestRange = -1;
+        for (int c = 0; c < channels; c++) {
+            int min = 255, max = 0;
+            for (int i = lo; i < hi; i++) {
+                int v = points[order[i]][c];
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+            if (max - min > bestRange) {
+                bestRange = max - min;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static void sortByAxis(int[][] points, int[] order, int lo, int hi, int axis) {
+        long[] keys = new long[hi - lo];
+        for (int i = lo; i < hi; i++) keys[i - lo] = ((long) points[order[i]][axis] << 32) | order[i];
+        Arrays.sort(keys);
+        for (int i = lo; i < hi; i++) order[i] = (int) keys[i - lo];
+    }
+
+    // Rounded weighted means, clusters left empty keep their previous center
+    private static int[][] centroids(int[][] points, long[] weights, int[] assignment, int k, int[][] previous) {
+        int channels = points[0].length;
+        double[][] sums = new double[k][channels];
+        long[] areas = new long[k];
+        for (int i = 0; i < points.length; i++) {
+            int cluster = assignment[i];
+            areas[cluster] += weights[i];
+            for (int c = 0; c < channels; c++) sums[cluster][c] += (double) weights[i] * points[i][c];
+        }
+
+        int count = 0;
+        int[][] centers = new int[k][];
+        for (int cluster = 0; cluster < k; cluster++) {
+            if (areas[cluster] == 0) {
+                centers[cluster] = previous != null && cluster < previous.length ? previous[cluster] : null;
+            } else {
+                centers[cluster] = new int[channels];
+                for (int c = 0; c < channels; c++) {
+                    centers[cluster][c] = (int) Math.round(sums[cluster][c] / areas[cluster]);
+                }
+            }
+            if (centers[cluster] != null) count = cluster + 1;
+        }
+        return Arrays.copyOf(centers, count);
+    }
+
+    // Returns whether any point changed cluster
+    private static boolean assignNearest(int[][] points, int[][] centers, int[] assignment) {
+        int[] sorted = sortByFirstChannel(centers);
+        boolean changed = false;
+        for (int i = 0; i < points.length; i++) {
+            int best = nearest(centers, sorted, points[i], assignment[i]);
+            if (best != assignment[i]) {
+                assignment[i] = best;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static int[] sortByFirstChannel(int[][] centers) {
+        long[] keys = new long[centers.length];
+        for (int i = 0; i < centers.length; i++) keys[i] = ((long) centers[i][0] << 32) | i;
+        Arrays.sort(keys);
+        int[] sorted = new int[centers.length];
+        for (int i = 0; i < centers.length; i++) sorted[i] = (int) keys[i];
+        return sorted;
+    }
+
+    // Scan outward from the color along the first channel, a gap there bounds the whole distance
+    private static int nearest(int[][] centers, int[] sorted, int[] color, int start) {
+        int best = start;
+        int bestDistance = distance(color, centers[start], Integer.MAX_VALUE);
+
+        int low = 0, high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (centers[sorted[mid]][0] < color[0]) low = mid + 1; else high = mid;
+        }
+
+        for (int up = low, down = low - 1; bestDistance > 0 && (up < sorted.length || down >= 0); ) {
+            int upGap = up < sorted.length ? centers[sorted[up]][0] - color[0] : Integer.MAX_VALUE;
+            int downGap = down >= 0 ? color[0] - centers[sorted[down]][0] : Integer.MAX_VALUE;
+            int i;
+            if (upGap <= downGap) {
+                i = sorted[up++];
+                if ((long) upGap * upGap >= bestDistance) break;
+            } else {
+                i = sorted[down--];
+                if ((long) downGap * downGap >= bestDistance) break;
+            }
+            int d = distance(color, centers[i], bestDistance);
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static int distance(int[] a, int[] b, int bound) {
+        int d = 0;
+        for (int c = 0; c < a.length && d < bound; c++) {
+            int diff = a[c] - b[c];
+            d += diff * diff;
+        }
+        return d;
+    }
+
+    private static int countLeaves(Node node) {
+        if (node == null) return 0;
+        if (node.isLeaf()) return 1;
+        return countLeaves(node.getTopLeft()) + countLeaves(node.getTopRight())
+             + countLeaves(node.getBottomLeft()) + countLeaves(node.getBottomRight());
+    }
+
+    private static void collectLeaves(Node node, int[] colors, long[] areas, int[] cursor) {
+        if (node == null) return;
+        if (node.isLeaf()) {
+            int i = cursor[0]++;
+            colors[i] = LinearQuadtree.packColor(node.getAvgColor());
+            areas[i] = (long) node.getWidth() * node.getHeight();
+            return;
+        }
+        collectLeaves(node.getTopLeft(), colors, areas, cursor);
+        collectLeaves(node.getTopRight(), colors, areas, cursor);
+        collectLeaves(node.getBottomLeft(), colors, areas, cursor);
+        collectLeaves(node.getBottomRight(), colors, areas, cursor);
+    }
+
+    // Entry for a color, the build's leaf colors and the entries themselves map directly, others to the nearest entry
+    public int indexOf(int[] color) {
+        int rgb = LinearQuadtree.packColor(color);
+        int leaf = Arrays.binarySearch(leafColors, rgb);
+        if (leaf >= 0) return leafEntries[leaf] & 0xFF;
+        int entry = Arrays.binarySearch(sortedColors, rgb);
+        if (entry >= 0) return sortedEntries[entry];
+        return nearest(colors, sortByFirstChannel(colors), color, 0);
+    }
+
+    // Shared entry arrays, leaves point at these instead of their own colors
+    public int[] getColor(int index) { return colors[index]; }
+    public int getSize() { return colors.length; }
+    public int getLeafCount() { return leafCount; }
+    public int getDistinctColors() { return distinctColors; }
+
+    // Area-weighted mean squared channel distance from leaf colors to their entries
+    public double getAddedError() { return addedError; }
+
+    // Root mean square per channel sample, same unit as the pixel values
+    public double getAddedRmse() { return Math.sqrt(addedError / colors[0].length); }
+
+    // Packed RGB entries
+    public int[] toPacked() {
+        int[] packed = new int[colors.length];
+        for (int i = 0; i < colors.length; i++) packed[i] = LinearQuadtree.packColor(colors[i]);
+        return packed;
+    }
+}
\ No newline at end of file
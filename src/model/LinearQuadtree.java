@@ -0,0 +1,395 @@
+package src.model;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import src.error.ErrorMetric;
+import src.error.ErrorMetrics;
+
+// Leaves as sorted Morton (Z-order) codes
+public class LinearQuadtree {
+    // Two bits per level, sign bit unused
+    public static final int MAX_LEVEL = 31;
+    private static final int MAGIC = 0x51544C32; // "QTL2"
+    private static final int PALETTE_MAGIC = 0x51545032; // "QTP2"
+
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final long[] codes;
+    private final byte[] levels;
+    private final int[] colors;
+    private final int[] palette;
+    private final byte[] indices;
+    private final int minBlockSize;
+    private final double threshold;
+    private final ErrorMetric errorMethod;
+
+    // Gray trees (1 channel) store v as packed v, v, v
+    public LinearQuadtree(int width, int height, int channels, long[] codes, byte[] levels, int[] colors,
+                          int minBlockSize, double threshold, ErrorMetric errorMethod) {
+        this(width, height, channels, codes, levels, colors, null, null, minBlockSize, threshold, errorMethod);
+    }
+
+    // Leaves hold one-byte indices into at most 256 packed RGB entries
+    public LinearQuadtree(int width, int height, int channels, long[] codes, byte[] levels, int[] palette,
+                          byte[] indices, int minBlockSize, double threshold, ErrorMetric errorMethod) {
+        this(width, height, channels, codes, levels, null, palette, indices, minBlockSize, threshold, errorMethod);
+    }
+
+    private LinearQuadtree(int width, int height, int channels, long[] codes, byte[] levels, int[] colors,
+                           int[] palette, byte[] indices, int minBlockSize, double threshold,
+                           ErrorMetric errorMethod) {
+        if (channels != 1 && channels != 3) {
+            throw new IllegalArgumentException("Linear trees hold 1 or 3 channels");
+        }
+        int colorCount = colors != null ? colors.length : indices.length;
+        if (codes.length != levels.length || codes.length != colorCount) {
+            throw new IllegalArgumentException("Leaf arrays must have the same length");
+        }
+        if (palette != null && (palette.length == 0 || palette.length > LeafPalette.MAX_COLORS)) {
+            throw new IllegalArgumentException("Palette must have 1 to " + LeafPalette.MAX_COLORS + " entries");
+        }
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.codes = codes;
+        this.levels = levels;
+        this.colors = colors;
+        this.palette = palette;
+        this.indices = indices;
+        this.minBlockSize = minBlockSize;
+        this.threshold = threshold;
+        this.errorMethod = errorMethod;
+    }
+
+    // Encode pointer tree
+    public static LinearQuadtree fromQuadtree(Quadtree tree) {
+        int leafCount = countLeaves(tree.getRoot());
+        long[] codes = new long[leafCount];
+        byte[] levels = new byte[leafCount];
+        int[] colors = new int[leafCount];
+
+        int[] cursor = new int[1];
+        collectLeaves(tree.getRoot(), 0L, 0, codes, levels, colors, cursor);
+
+        return new LinearQuadtree(tree.getWidth(), tree.getHeight(), tree.isGrayscale() ? 1 : 3, codes, levels, colors,
+            tree.getMinBlockSize(), tree.getThreshold(), tree.getErrorMethod());
+    }
+
+    // Encode pointer tree with palette indices instead of leaf colors
+    public static LinearQuadtree fromQuadtree(Quadtree tree, LeafPalette palette) {
+        LinearQuadtree direct = fromQuadtree(tree);
+        int leafCount = direct.getLeafCount();
+        byte[] indices = new byte[leafCount];
+        for (int i = 0; i < leafCount; i++) {
+            indices[i] = (byte) palette.indexOf(direct.toColor(direct.colors[i]));
+        }
+
+        return new LinearQuadtree(direct.width, direct.height, direct.channels, direct.codes, direct.levels,
+            palette.toPacked(), indices, direct.minBlockSize, direct.threshold, direct.errorMethod);
+    }
+
+    private static int countLeaves(Node node) {
+        if (node == null) return 0;
+        if (node.isLeaf()) return 1;
+        return countLeaves(node.getTopLeft()) + countLeaves(node.getTopRight())
+             + countLeaves(node.getBottomLeft()) + countLeaves(node.getBottomRight());
+    }
+
+    // Depth-first TL, TR, BL, BR yields sorted codes
+    private static void collectLeaves(Node node, long code, int level, long[] codes, byte[] levels, int[] colors, int[] cursor) {
+        if (node == null) return;
+
+        if (node.isLeaf()) {
+            int i = cursor[0]++;
+            codes[i] = code;
+            levels[i] = (byte) level;
+            colors[i] = packColor(node.getAvgColor());
+            return;
+        }
+
+        if (level >= MAX_LEVEL) {
+            throw new IllegalArgumentException("Tree deeper than " + MAX_LEVEL + " levels");
+        }
+        checkMidpointSplit(node);
+
+        int shift = shiftFor(level + 1);
+        collectLeaves(node.getTopLeft(), code, level + 1, codes, levels, colors, cursor);
+        collectLeaves(node.getTopRight(), code | (1L << shift), level + 1, codes, levels, colors, cursor);
+        collectLeaves(node.getBottomLeft(), code | (2L << shift), level + 1, codes, levels, colors, cursor);
+        collectLeaves(node.getBottomRight(), code | (3L << shift), level + 1, codes, levels, colors, cursor);
+    }
+
+    // Codes replay the halving rule of buildTree
+    private static void checkMidpointSplit(Node node) {
+        Node bottomRight = node.getBottomRight();
+        int halfWidth = node.getWidth() / 2;
+        int halfHeight = node.getHeight() / 2;
+        if (bottomRight == null
+                || bottomRight.getX() != node.getX() + halfWidth
+                || bottomRight.getY() != node.getY() + halfHeight) {
+            throw new IllegalArgumentException("Only midpoint-split trees have locational codes");
+        }
+    }
+
+    // Decode to pointer tree
+    public Quadtree toQuadtree() {
+        // Paletted leaves share one array per entry
+        int[][] entries = null;
+        if (palette != null) {
+            entries = new int[palette.length][];
+            for (int i = 0; i < palette.length; i++) entries[i] = toColor(palette[i]);
+        }
+        Node root = codes.length == 0 ? null : decode(0, 0, width, height, 0, 0, codes.length, entries);
+        return new Quadtree(root, width, height, minBlockSize, threshold, errorMethod);
+    }
+
+    private Node decode(int x, int y, int w, int h, int level, int lo, int hi, int[][] entries) {
+        if (lo >= hi) {
+            throw new IllegalStateException("Missing leaves under level " + level);
+        }
+        if (hi - lo == 1 && levels[lo] == level) {
+            int[] color = entries != null ? entries[indices[lo] & 0xFF] : toColor(colors[lo]);
+            return new Node(x, y, w, h, color, 0);
+        }
+
+        // Children are contiguous runs in Z-order
+        int shift = shiftFor(level + 1);
+        int[] bounds = new int[5];
+        bounds[0] = lo;
+        bounds[4] = hi;
+        for (int q = 1; q < 4; q++) {
+            int i = bounds[q - 1];
+            while (i < hi && (int) ((codes[i] >>> shift) & 3) < q) i++;
+            bounds[q] = i;
+        }
+
+        int halfWidth = w / 2;
+        int halfHeight = h / 2;
+        int restWidth = w - halfWidth;
+        int restHeight = h - halfHeight;
+        Node topLeft = decode(x, y, halfWidth, halfHeight, level + 1, bounds[0], bounds[1], entries);
+        Node topRight = decode(x + halfWidth, y, restWidth, halfHeight, level + 1, bounds[1], bounds[2], entries);
+        Node bottomLeft = decode(x, y + halfHeight, halfWidth, restHeight, level + 1, bounds[2], bounds[3], entries);
+        Node bottomRight = decode(x + halfWidth, y + halfHeight, restWidth, restHeight, level + 1, bounds[3], bounds[4], entries);
+
+        // Area-weighted parent color
+        int[] avgColor = mergeColors(new Node[] { topLeft, topRight, bottomLeft, bottomRight });
+        Node node = new Node(x, y, w, h, avgColor, 0);
+        node.split(topLeft, topRight, bottomLeft, bottomRight);
+        return node;
+    }
+
+    private static int[] mergeColors(Node[] children) {
+        int channels = children[0].getAvgColor().length;
+        long[] sums = new long[channels];
+        long area = 0;
+        for (Node child : children) {
+            long a = (long) child.getWidth() * child.getHeight();
+            int[] color = child.getAvgColor();
+            for (int c = 0; c < channels; c++) sums[c] += color[c] * a;
+            area += a;
+        }
+        if (area == 0) {
+            return children[0].getAvgColor();
+        }
+
+        int[] avgColor = new int[channels];
+        for (int c = 0; c < channels; c++) avgColor[c] = (int) (sums[c] / area);
+        return avgColor;
+    }
+
+    // Leaf index at point, -1 if uncovered
+    public int locate(int px, int py) {
+        if (px < 0 || py < 0 || px >= width || py >= height) return -1;
+
+        // Full-depth code of the point
+        long pointCode = 0;
+        int x = 0, y = 0, w = width, h = height;
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            int halfWidth = w / 2;
+            int halfHeight = h / 2;
+            if (halfWidth == 0 || halfHeight == 0) break;
+
+            int quadrant = 0;
+            if (px >= x + halfWidth) {
+                quadrant |= 1;
+                x += halfWidth;
+                w -= halfWidth;
+            } else {
+                w = halfWidth;
+            }
+            if (py >= y + halfHeight) {
+                quadrant |= 2;
+                y += halfHeight;
+                h -= halfHeight;
+            } else {
+                h = halfHeight;
+            }
+            pointCode |= (long) quadrant << shiftFor(level);
+        }
+
+        // Greatest leaf code not above the point
+        int i = Arrays.binarySearch(codes, pointCode);
+        if (i < 0) i = -i - 2;
+        if (i < 0) return -1;
+
+        int shift = shiftFor(levels[i]);
+        return (pointCode >>> shift) == (codes[i] >>> shift) ? i : -1;
+    }
+
+    // Packed RGB at point, -1 if uncovered
+    public int getColorAt(int px, int py) {
+        int i = locate(px, py);
+        return i < 0 ? -1 : getColor(i);
+    }
+
+    // Leaf rectangle as x, y, w, h
+    public int[] getBounds(int index) {
+        long code = codes[index];
+        int x = 0, y = 0, w = width, h = height;
+        for (int level = 1; level <= levels[index]; level++) {
+            int quadrant = (int) ((code >>> shiftFor(level)) & 3);
+            int halfWidth = w / 2;
+            int halfHeight = h / 2;
+            if ((quadrant & 1) != 0) {
+                x += halfWidth;
+                w -= halfWidth;
+            } else {
+                w = halfWidth;
+            }
+            if ((quadrant & 2) != 0) {
+                y += halfHeight;
+                h -= halfHeight;
+            } else {
+                h = halfHeight;
+            }
+        }
+        return new int[] { x, y, w, h };
+    }
+
+    // Z-order fill into raster
+    public BufferedImage render() {
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+
+        for (int i = 0; i < codes.length; i++) {
+            int[] box = getBounds(i);
+            int rgb = getColor(i);
+            for (int row = box[1]; row < box[1] + box[3]; row++) {
+                int offset = row * width + box[0];
+                Arrays.fill(pixels, offset, offset + box[2], rgb);
+            }
+        }
+
+        return result;
+    }
+
+    // Serialize leaves
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(palette != null ? PALETTE_MAGIC : MAGIC);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeByte(channels);
+        out.writeInt(minBlockSize);
+        out.writeDouble(threshold);
+        out.writeInt(errorMethod.getId());
+        out.writeInt(codes.length);
+        for (long code : codes) out.writeLong(code);
+        out.write(levels);
+        if (palette != null) {
+            out.writeShort(palette.length);
+            for (int color : palette) out.writeInt(color);
+            out.write(indices);
+        } else {
+            for (int color : colors) out.writeInt(color);
+        }
+    }
+
+    // Deserialize leaves
+    public static LinearQuadtree readFrom(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC && magic != PALETTE_MAGIC) {
+            throw new IOException("Not a linear quadtree stream");
+        }
+        int width = in.readInt();
+        int height = in.readInt();
+        int channels = in.readUnsignedByte();
+        if (channels != 1 && channels != 3) {
+            throw new IOException("Unsupported channel count " + channels);
+        }
+        int minBlockSize = in.readInt();
+        double threshold = in.readDouble();
+        ErrorMetric errorMethod = ErrorMetrics.getById(in.readInt());
+        int count = in.readInt();
+        if (errorMethod == null || count < 0) {
+            throw new IOException("Corrupt linear quadtree stream");
+        }
+
+        long[] codes = new long[count];
+        byte[] levels = new byte[count];
+        for (int i = 0; i < count; i++) codes[i] = in.readLong();
+        in.readFully(levels);
+
+        if (magic == PALETTE_MAGIC) {
+            int paletteSize = in.readUnsignedShort();
+            if (paletteSize == 0 || paletteSize > LeafPalette.MAX_COLORS) {
+                throw new IOException("Corrupt linear quadtree stream");
+            }
+            int[] palette = new int[paletteSize];
+            for (int i = 0; i < palette.length; i++) palette[i] = in.readInt();
+            byte[] indices = new byte[count];
+            in.readFully(indices);
+            for (byte index : indices) {
+                if ((index & 0xFF) >= palette.length) {
+                    throw new IOException("Palette index out of range");
+                }
+            }
+            return new LinearQuadtree(width, height, channels, codes, levels, palette, indices,
+                minBlockSize, threshold, errorMethod);
+        }
+
+        int[] colors = new int[count];
+        for (int i = 0; i < count; i++) colors[i] = in.readInt();
+        return new LinearQuadtree(width, height, channels, codes, levels, colors, minBlockSize, threshold, errorMethod);
+    }
+
+    private static int shiftFor(int level) {
+        return 2 * (MAX_LEVEL - level);
+    }
+
+    static int packColor(int[] avgColor) {
+        if (avgColor.length == 1) {
+            int v = avgColor[0];
+            return (v << 16) | (v << 8) | v;
+        }
+        return (avgColor[0] << 16) | (avgColor[1] << 8) | avgColor[2];
+    }
+
+    static int[] unpackColor(int rgb) {
+        return new int[] { (rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF };
+    }
+
+    // Node color with this tree's channel count
+    private int[] toColor(int rgb) {
+        return channels == 1 ? new int[] { rgb & 0xFF } : unpackColor(rgb);
+    }
+
+    // Data getters
+    public int getLeafCount() { return codes.length; }
+    public long getCode(int index) { return codes[index]; }
+    public int getLevel(int index) { return levels[index]; }
+    public int getColor(int index) { return colors != null ? colors[index] : palette[indices[index] & 0xFF]; }
+    public boolean isPaletted() { return palette != null; }
+    public int getPaletteSize() { return palette != null ? palette.length : 0; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getChannels() { return channels; }
+    public int getMinBlockSize() { return minBlockSize; }
+    public double getThreshold() { return threshold; }
+    public ErrorMetric getErrorMethod() { return errorMethod; }
+}
\ No newline at end of file
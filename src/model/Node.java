@@ -38,6 +38,9 @@ public class Node {
     
     // Get color as Color
     public Color getColor() {
+        if (avgColor.length == 1) {
+            return new Color(avgColor[0], avgColor[0], avgColor[0]);
+        }
         return new Color(avgColor[0], avgColor[1], avgColor[2]);
     }
     
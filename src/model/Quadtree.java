@@ -4,38 +4,121 @@ import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import src.error.BlockStatistics;
+import src.error.BlockSummary;
+import src.error.ChangeMask;
 import src.error.ErrorCalculator;
-import src.error.ErrorMethod;
+import src.error.ErrorMetric;
+import src.error.PatchedStatistics;
+import src.error.SummaryPyramid;
+import src.util.MemoryBudget;
+import src.util.PixelPlanes;
+import src.util.ProgressTracker;
 
 public class Quadtree {
     private Node root;
     private int minBlockSize;
     private double threshold;
-    private ErrorMethod errorMethod;
+    private ErrorMetric errorMethod;
     private int depth;
     private int nodeCount;
+    private BlockStatistics stats;
+    private BlockStatistics errorStats;
     private BufferedImage originalImage;
+    private int imageWidth;
+    private int imageHeight;
     private List<BufferedImage> compressionSteps;
     private int stepCounter = 0;
     private static final int MAX_FRAMES = 25;
+    private int frameLimit = MAX_FRAMES;
+    private int reusedNodes;
+    private int rebuiltNodes;
+    // Grown on demand, adaptive cuts can keep 3/4 of a side per level and pass 32 levels
+    private int[] levelCounts = new int[33];
+    private int dirtyX0, dirtyY0, dirtyX1, dirtyY1;
+    private boolean adaptiveSplits;
+    // Set once update copied the planes, cleared whenever the statistics are shared
+    private boolean ownsPlanes;
+    private final List<Consumer<Rectangle>> updateListeners = new CopyOnWriteArrayList<>();
+    private static final int REPORT_BATCH = 1024;
+    private ProgressTracker progress;
+    // Merged histograms and min/max of large blocks, only while the first build runs
+    private SummaryPyramid pyramid;
+    private int pendingSteps;
+    private int pendingNodes;
+    private long pendingPixels;
 
     public Quadtree(BufferedImage image, int minBlockSize, double threshold, 
-                   ErrorMethod errorMethod, boolean captureSteps) {
+                   ErrorMetric errorMethod, boolean captureSteps) {
+        this(BlockStatistics.compute(PixelPlanes.fromImage(image), ErrorCalculator.needsSquares(errorMethod)),
+             image, minBlockSize, threshold, errorMethod, captureSteps, false, null);
+    }
+
+    // Build from precomputed statistics
+    public Quadtree(BlockStatistics stats, int minBlockSize, double threshold, 
+                   ErrorMetric errorMethod, boolean captureSteps) {
+        this(stats, minBlockSize, threshold, errorMethod, captureSteps, false);
+    }
+
+    // Optionally cut where the children's squared error is lowest
+    public Quadtree(BlockStatistics stats, int minBlockSize, double threshold, 
+                   ErrorMetric errorMethod, boolean captureSteps, boolean adaptiveSplits) {
+        this(stats, minBlockSize, threshold, errorMethod, captureSteps, adaptiveSplits, null);
+    }
+
+    // Report build and render progress, abandon once the tracker is cancelled
+    public Quadtree(BlockStatistics stats, int minBlockSize, double threshold, 
+                   ErrorMetric errorMethod, boolean captureSteps, boolean adaptiveSplits, ProgressTracker progress) {
+        this(stats, captureSteps ? stats.getPlanes().toImage() : null,
+             minBlockSize, threshold, errorMethod, captureSteps, adaptiveSplits, progress);
+    }
+
+    private Quadtree(BlockStatistics stats, BufferedImage image, int minBlockSize, double threshold, 
+                    ErrorMetric errorMethod, boolean captureSteps, boolean adaptiveSplits, ProgressTracker progress) {
+        if (adaptiveSplits && !stats.hasSquares()) {
+            throw new IllegalArgumentException("Adaptive splits need statistics with squares");
+        }
+        this.adaptiveSplits = adaptiveSplits;
         this.minBlockSize = minBlockSize;
         this.threshold = threshold;
         this.errorMethod = errorMethod;
         this.depth = 0;
         this.nodeCount = 0;
+        this.stats = stats;
+        this.errorStats = ErrorCalculator.statisticsFor(errorMethod, stats);
         this.originalImage = image;
+        this.imageWidth = stats.getWidth();
+        this.imageHeight = stats.getHeight();
         this.compressionSteps = captureSteps ? new ArrayList<>() : null;
+        this.progress = progress;
         
-        // Add first frame
+        // Frames fit beside planes, stats, output and the frame being drawn
         if (captureSteps) {
+            long pixels = (long) imageWidth * imageHeight;
+            long reserved = MemoryBudget.buildBytes(imageWidth, imageHeight, stats.getChannels(),
+                stats.hasSquares()) + MemoryBudget.rasterBytes(pixels);
+            this.frameLimit = MemoryBudget.fromSystem().maxFrames(pixels, reserved, MAX_FRAMES + 1) - 1;
+            if (frameLimit < 1) {
+                System.out.println("Warning: Memory budget too small for frame capture");
+                this.compressionSteps = null;
+            } else if (frameLimit < MAX_FRAMES) {
+                System.out.println("Memory budget limits frame capture to " + (frameLimit + 1) + " frames");
+            }
+        }
+        
+        // Add first frame
+        if (compressionSteps != null) {
             BufferedImage initialImage = new BufferedImage(
-                image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+                imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
             Graphics2D g2d = initialImage.createGraphics();
             g2d.drawImage(image, 0, 0, null);
             g2d.dispose();
@@ -43,50 +126,496 @@ public class Quadtree {
             compressionSteps.add(initialImage);
         }
         
-        // Build tree
-        this.root = buildTree(image, 0, 0, image.getWidth(), image.getHeight(), 0);
+        // Build tree, early exits beat a full pass to fill the pyramid, edits later change its planes
+        if (!adaptiveSplits && !ErrorCalculator.exitsEarly(errorMethod)) {
+            this.pyramid = SummaryPyramid.build(errorStats, errorMethod, minBlockSize);
+        }
+        this.root = buildTree(0, 0, imageWidth, imageHeight, 0);
+        this.pyramid = null;
+        this.rebuiltNodes = nodeCount;
+        flushProgress();
         
         // Add last frame
-        if (captureSteps) {
+        if (compressionSteps != null) {
             BufferedImage finalImage = new BufferedImage(
-                image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
-            renderQuadtree(finalImage, root);
+                imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+            renderQuadtreePartial(finalImage, root);
             compressionSteps.add(finalImage);
         }
     }
 
-    private Node buildTree(BufferedImage image, int x, int y, int width, int height, int currentDepth) {
-        // Track stats
+    // Next frame, reusing subtrees whose pixels did not change
+    public Quadtree(BlockStatistics stats, Quadtree previous, ChangeMask changes) {
+        if (previous.getWidth() != stats.getWidth() || previous.getHeight() != stats.getHeight()) {
+            throw new IllegalArgumentException("Frame size differs from previous frame");
+        }
+        this.minBlockSize = previous.minBlockSize;
+        this.threshold = previous.threshold;
+        this.errorMethod = previous.errorMethod;
+        this.adaptiveSplits = previous.adaptiveSplits;
+        this.stats = stats;
+        this.errorStats = ErrorCalculator.statisticsFor(errorMethod, stats);
+        this.imageWidth = stats.getWidth();
+        this.imageHeight = stats.getHeight();
+        this.compressionSteps = null;
+        this.root = rebuildTree(previous.root, changes, 0, 0, imageWidth, imageHeight, 0);
+        this.rebuiltNodes = nodeCount - reusedNodes;
+    }
+
+    // Wrap existing tree
+    public Quadtree(Node root, int width, int height, int minBlockSize, double threshold, ErrorMetric errorMethod) {
+        this.root = root;
+        this.minBlockSize = minBlockSize;
+        this.threshold = threshold;
+        this.errorMethod = errorMethod;
+        this.imageWidth = width;
+        this.imageHeight = height;
+        this.compressionSteps = null;
+        countNodes(root, 0);
+    }
+
+    // Same build at a higher threshold, collapsing splits it no longer justifies
+    public Quadtree prune(double higherThreshold) {
+        return prune(higherThreshold, minBlockSize);
+    }
+    
+    // Higher threshold and larger minimum block only remove splits
+    public Quadtree prune(double higherThreshold, int largerMinBlockSize) {
+        if (higherThreshold < threshold || largerMinBlockSize < minBlockSize) {
+            throw new IllegalArgumentException("Pruning needs a threshold of at least " + threshold
+                + " and a minimum block of at least " + minBlockSize);
+        }
+        if (errorStats == null) {
+            throw new IllegalStateException("Tree has no statistics to prune");
+        }
+        // Adaptive cuts depend on the minimum block size
+        if (adaptiveSplits && largerMinBlockSize != minBlockSize) {
+            throw new IllegalStateException("Adaptive trees cannot be pruned to another block size");
+        }
+        ownsPlanes = false;
+        Quadtree pruned = new Quadtree(pruneTree(root, higherThreshold, largerMinBlockSize), imageWidth, imageHeight,
+            largerMinBlockSize, higherThreshold, errorMethod);
+        pruned.stats = stats;
+        pruned.errorStats = errorStats;
+        pruned.adaptiveSplits = adaptiveSplits;
+        return pruned;
+    }
+    
+    // Leaves stay leaves, untouched subtrees are shared with this tree
+    private Node pruneTree(Node node, double limit, int minBlock) {
+        if (node.isLeaf()) return node;
+        
+        // Blocks now too small to split keep their exact error
+        if (node.getWidth() <= minBlock || node.getHeight() <= minBlock) {
+            double error = ErrorCalculator.calculateError(errorStats, node.getX(), node.getY(),
+                node.getWidth(), node.getHeight(), errorMethod);
+            return new Node(node.getX(), node.getY(), node.getWidth(), node.getHeight(), node.getAvgColor(), error);
+        }
+        
+        // Split nodes may hold an early-exit lower bound, re-evaluate against the new limit
+        double error = node.getError();
+        if (error <= limit) {
+            error = ErrorCalculator.calculateError(errorStats, node.getX(), node.getY(),
+                node.getWidth(), node.getHeight(), errorMethod, limit);
+            if (error <= limit) {
+                return new Node(node.getX(), node.getY(), node.getWidth(), node.getHeight(), node.getAvgColor(), error);
+            }
+        }
+        
+        Node topLeft = pruneTree(node.getTopLeft(), limit, minBlock);
+        Node topRight = pruneTree(node.getTopRight(), limit, minBlock);
+        Node bottomLeft = pruneTree(node.getBottomLeft(), limit, minBlock);
+        Node bottomRight = pruneTree(node.getBottomRight(), limit, minBlock);
+        if (topLeft == node.getTopLeft() && topRight == node.getTopRight()
+                && bottomLeft == node.getBottomLeft() && bottomRight == node.getBottomRight()) {
+            return node;
+        }
+        
+        Node copy = new Node(node.getX(), node.getY(), node.getWidth(), node.getHeight(), node.getAvgColor(), error);
+        copy.split(topLeft, topRight, bottomLeft, bottomRight);
+        return copy;
+    }
+
+    // Same tree with every leaf recolored to its palette entry
+    public Quadtree quantize(LeafPalette palette) {
+        ownsPlanes = false;
+        Quadtree quantized = new Quadtree(quantizeTree(root, palette), imageWidth, imageHeight,
+            minBlockSize, threshold, errorMethod);
+        quantized.stats = stats;
+        quantized.errorStats = errorStats;
+        quantized.adaptiveSplits = adaptiveSplits;
+        return quantized;
+    }
+    
+    // Leaves share the palette's color arrays, split nodes keep their averages
+    private Node quantizeTree(Node node, LeafPalette palette) {
+        if (node == null) return null;
+        int[] color = node.isLeaf() ? palette.getColor(palette.indexOf(node.getAvgColor())) : node.getAvgColor();
+        Node copy = new Node(node.getX(), node.getY(), node.getWidth(), node.getHeight(), color, node.getError());
+        if (!node.isLeaf()) {
+            copy.split(quantizeTree(node.getTopLeft(), palette), quantizeTree(node.getTopRight(), palette),
+                quantizeTree(node.getBottomLeft(), palette), quantizeTree(node.getBottomRight(), palette));
+        }
+        return copy;
+    }
+
+    // Called with the changed output region after each update, e.g. to drop cached tiles
+    public void addUpdateListener(Consumer<Rectangle> listener) {
+        updateListeners.add(listener);
+    }
+    
+    public void removeUpdateListener(Consumer<Rectangle> listener) {
+        updateListeners.remove(listener);
+    }
+
+    // Tracker for later renders of this tree, null to stop reporting
+    public void setProgress(ProgressTracker progress) {
+        this.progress = progress;
+    }
+    
+    // Batched so a shared tracker is touched once per REPORT_BATCH steps
+    private void reportProgress(int nodes, long pixels) {
+        if (progress == null) return;
+        pendingNodes += nodes;
+        pendingPixels += pixels;
+        if (++pendingSteps >= REPORT_BATCH) {
+            flushProgress();
+        }
+    }
+    
+    private void flushProgress() {
+        if (progress == null || pendingSteps == 0) return;
+        int nodes = pendingNodes;
+        long pixels = pendingPixels;
+        pendingSteps = 0;
+        pendingNodes = 0;
+        pendingPixels = 0;
+        progress.advance(nodes, pixels);
+    }
+    
+    // Node count and depth bookkeeping
+    private void track(int currentDepth) {
         this.nodeCount++;
+        if (currentDepth >= levelCounts.length) {
+            levelCounts = Arrays.copyOf(levelCounts, Math.max(currentDepth + 1, 2 * levelCounts.length));
+        }
+        this.levelCounts[currentDepth]++;
         this.depth = Math.max(this.depth, currentDepth);
+    }
+    
+    private void untrack(Node node, int currentDepth) {
+        if (node == null) return;
+        
+        this.nodeCount--;
+        this.levelCounts[currentDepth]--;
+        
+        if (!node.isLeaf()) {
+            untrack(node.getTopLeft(), currentDepth + 1);
+            untrack(node.getTopRight(), currentDepth + 1);
+            untrack(node.getBottomLeft(), currentDepth + 1);
+            untrack(node.getBottomRight(), currentDepth + 1);
+        }
+    }
+
+    private void countNodes(Node node, int currentDepth) {
+        if (node == null) return;
+        
+        track(currentDepth);
+        
+        if (!node.isLeaf()) {
+            countNodes(node.getTopLeft(), currentDepth + 1);
+            countNodes(node.getTopRight(), currentDepth + 1);
+            countNodes(node.getBottomLeft(), currentDepth + 1);
+            countNodes(node.getBottomRight(), currentDepth + 1);
+        }
+    }
+
+    // Same decisions as buildTree, skipping unchanged blocks
+    private Node rebuildTree(Node previous, ChangeMask changes, int x, int y, int width, int height, int currentDepth) {
+        if (previous == null) {
+            return buildTree(x, y, width, height, currentDepth);
+        }
+        
+        // Identical pixels give identical error and split decisions
+        if (changes.count(x, y, width, height) == 0) {
+            int before = nodeCount;
+            countNodes(previous, currentDepth);
+            reusedNodes += nodeCount - before;
+            return previous;
+        }
+        
+        track(currentDepth);
+        
+        int[] avgColor = ErrorCalculator.calculateAvgColor(stats, x, y, width, height);
+        
+        boolean canSplit = width > minBlockSize && height > minBlockSize;
+        double error = blockError(x, y, width, height, canSplit);
+        Node node = new Node(x, y, width, height, avgColor, error);
+        
+        if (canSplit && error > threshold) {
+            int[] cut = splitPoint(x, y, width, height);
+            int halfWidth = cut[0];
+            int halfHeight = cut[1];
+            int restWidth = width - halfWidth;
+            int restHeight = height - halfHeight;
+            // Old children only count when the cut is unchanged
+            boolean sameCut = !previous.isLeaf() && previous.getTopLeft().getWidth() == halfWidth
+                && previous.getTopLeft().getHeight() == halfHeight;
+            
+            node.split(
+                rebuildTree(sameCut ? previous.getTopLeft() : null, changes,
+                            x, y, halfWidth, halfHeight, currentDepth + 1),
+                rebuildTree(sameCut ? previous.getTopRight() : null, changes,
+                            x + halfWidth, y, restWidth, halfHeight, currentDepth + 1),
+                rebuildTree(sameCut ? previous.getBottomLeft() : null, changes,
+                            x, y + halfHeight, halfWidth, restHeight, currentDepth + 1),
+                rebuildTree(sameCut ? previous.getBottomRight() : null, changes,
+                            x + halfWidth, y + halfHeight, restWidth, restHeight, currentDepth + 1));
+        }
+        
+        return node;
+    }
+
+    // Apply an edit inside the rectangle, returns the output region that changed
+    public Rectangle update(BufferedImage modified, int x, int y, int width, int height) {
+        if (modified.getWidth() != imageWidth || modified.getHeight() != imageHeight) {
+            throw new IllegalArgumentException("Modified image size differs from tree");
+        }
+        if (stats == null) {
+            throw new IllegalStateException("Tree has no statistics to update");
+        }
+        if (!errorMethod.usesSourcePlanes()) {
+            throw new IllegalStateException(errorMethod.getName() + " trees cannot be patched in place");
+        }
+        
+        // Clip to image
+        int x0 = Math.max(0, x);
+        int y0 = Math.max(0, y);
+        int x1 = Math.min(imageWidth, x + width);
+        int y1 = Math.min(imageHeight, y + height);
+        if (x1 <= x0 || y1 <= y0) return null;
+        
+        // Copy-on-write, planes supplied by the caller or shared with other trees are never edited
+        PixelPlanes planes = stats.getPlanes();
+        if (!ownsPlanes) {
+            planes = planes.copy();
+            ownsPlanes = true;
+        }
+        int[] row = new int[x1 - x0];
+        for (int py = y0; py < y1; py++) {
+            modified.getRGB(x0, py, row.length, 1, row, 0, row.length);
+            int offset = py * imageWidth + x0;
+            for (int i = 0; i < row.length; i++) {
+                int rgb = row[i];
+                if (planes.getChannels() == 1) {
+                    planes.getPlane(0)[offset + i] = (byte) rgb;
+                } else {
+                    planes.getPlane(0)[offset + i] = (byte) (rgb >> 16);
+                    planes.getPlane(1)[offset + i] = (byte) (rgb >> 8);
+                    planes.getPlane(2)[offset + i] = (byte) rgb;
+                }
+            }
+        }
+        this.stats = PatchedStatistics.patch(stats, planes, x0, y0, x1 - x0, y1 - y0);
+        this.errorStats = stats;
+        
+        // No frames for edits
+        List<BufferedImage> steps = compressionSteps;
+        compressionSteps = null;
+        dirtyX0 = Integer.MAX_VALUE;
+        dirtyY0 = Integer.MAX_VALUE;
+        dirtyX1 = Integer.MIN_VALUE;
+        dirtyY1 = Integer.MIN_VALUE;
+        try {
+            this.root = updateTree(root, x0, y0, x1 - x0, y1 - y0, 0);
+        } finally {
+            compressionSteps = steps;
+        }
+        
+        while (depth > 0 && levelCounts[depth] == 0) depth--;
+        
+        if (dirtyX1 <= dirtyX0) return null;
+        Rectangle dirty = new Rectangle(dirtyX0, dirtyY0, dirtyX1 - dirtyX0, dirtyY1 - dirtyY0);
+        for (Consumer<Rectangle> listener : updateListeners) listener.accept(dirty);
+        return dirty;
+    }
+    
+    // Path-copy nodes touching the edit, untouched subtrees are kept
+    private Node updateTree(Node node, int editX, int editY, int editWidth, int editHeight, int currentDepth) {
+        int x = node.getX();
+        int y = node.getY();
+        int width = node.getWidth();
+        int height = node.getHeight();
+        if (!intersects(x, y, width, height, editX, editY, editWidth, editHeight)) {
+            return node;
+        }
+        
+        int[] avgColor = ErrorCalculator.calculateAvgColor(stats, x, y, width, height);
+        
+        boolean canSplit = width > minBlockSize && height > minBlockSize;
+        double error = blockError(x, y, width, height, canSplit);
+        Node updated = new Node(x, y, width, height, avgColor, error);
+        
+        if (canSplit && error > threshold) {
+            int[] cut = splitPoint(x, y, width, height);
+            int halfWidth = cut[0];
+            int halfHeight = cut[1];
+            int restWidth = width - halfWidth;
+            int restHeight = height - halfHeight;
+            
+            boolean sameCut = !node.isLeaf() && node.getTopLeft().getWidth() == halfWidth
+                && node.getTopLeft().getHeight() == halfHeight;
+            
+            if (!sameCut) {
+                // New split below an old leaf, or a moved cut
+                if (!node.isLeaf()) {
+                    untrack(node.getTopLeft(), currentDepth + 1);
+                    untrack(node.getTopRight(), currentDepth + 1);
+                    untrack(node.getBottomLeft(), currentDepth + 1);
+                    untrack(node.getBottomRight(), currentDepth + 1);
+                }
+                markDirty(x, y, width, height);
+                updated.split(
+                    buildTree(x, y, halfWidth, halfHeight, currentDepth + 1),
+                    buildTree(x + halfWidth, y, restWidth, halfHeight, currentDepth + 1),
+                    buildTree(x, y + halfHeight, halfWidth, restHeight, currentDepth + 1),
+                    buildTree(x + halfWidth, y + halfHeight, restWidth, restHeight, currentDepth + 1));
+            } else {
+                updated.split(
+                    updateTree(node.getTopLeft(), editX, editY, editWidth, editHeight, currentDepth + 1),
+                    updateTree(node.getTopRight(), editX, editY, editWidth, editHeight, currentDepth + 1),
+                    updateTree(node.getBottomLeft(), editX, editY, editWidth, editHeight, currentDepth + 1),
+                    updateTree(node.getBottomRight(), editX, editY, editWidth, editHeight, currentDepth + 1));
+            }
+        } else {
+            // Leaf color or collapse
+            if (!node.isLeaf()) {
+                untrack(node.getTopLeft(), currentDepth + 1);
+                untrack(node.getTopRight(), currentDepth + 1);
+                untrack(node.getBottomLeft(), currentDepth + 1);
+                untrack(node.getBottomRight(), currentDepth + 1);
+            }
+            markDirty(x, y, width, height);
+        }
+        
+        return updated;
+    }
+    
+    private void markDirty(int x, int y, int width, int height) {
+        dirtyX0 = Math.min(dirtyX0, x);
+        dirtyY0 = Math.min(dirtyY0, y);
+        dirtyX1 = Math.max(dirtyX1, x + width);
+        dirtyY1 = Math.max(dirtyY1, y + height);
+    }
+    
+    // Redraw only a region of an existing output
+    public void renderRegion(BufferedImage image, Rectangle region) {
+        if (region == null) return;
+        renderTile(image, root, region.x, region.y, region.width, region.height);
+        flushProgress();
+    }
+
+    // Midpoint, or the candidate cut with least combined child SSE
+    private int[] splitPoint(int x, int y, int width, int height) {
+        int bestX = width / 2;
+        int bestY = height / 2;
+        if (!adaptiveSplits) {
+            return new int[] { bestX, bestY };
+        }
+        
+        // Cuts at 2/8 .. 6/8, children no smaller than the midpoint rule allows
+        int minWidth = Math.min(minBlockSize, width / 2);
+        int minHeight = Math.min(minBlockSize, height / 2);
+        double bestError = childrenSSE(x, y, width, height, bestX, bestY);
+        
+        for (int i = 2; i <= 6; i++) {
+            int cutX = width * i / 8;
+            if (cutX < Math.max(1, minWidth) || width - cutX < Math.max(1, minWidth)) continue;
+            for (int j = 2; j <= 6; j++) {
+                int cutY = height * j / 8;
+                if (cutY < Math.max(1, minHeight) || height - cutY < Math.max(1, minHeight)) continue;
+                
+                double error = childrenSSE(x, y, width, height, cutX, cutY);
+                if (error < bestError) {
+                    bestError = error;
+                    bestX = cutX;
+                    bestY = cutY;
+                }
+            }
+        }
+        
+        return new int[] { bestX, bestY };
+    }
+    
+    private double childrenSSE(int x, int y, int width, int height, int cutX, int cutY) {
+        return blockSSE(x, y, cutX, cutY)
+            + blockSSE(x + cutX, y, width - cutX, cutY)
+            + blockSSE(x, y + cutY, cutX, height - cutY)
+            + blockSSE(x + cutX, y + cutY, width - cutX, height - cutY);
+    }
+    
+    // Sum of squared deviations from the block mean, all channels
+    private double blockSSE(int x, int y, int width, int height) {
+        double n = (double) width * height;
+        double sse = 0;
+        for (int c = 0; c < stats.getChannels(); c++) {
+            double sum = stats.sum(c, x, y, width, height);
+            sse += stats.sumOfSquares(c, x, y, width, height) - sum * sum / n;
+        }
+        return sse;
+    }
+
+    // Pyramid blocks read their merged summary, the rest go through the per-block paths
+    private double blockError(int x, int y, int width, int height, boolean canSplit) {
+        BlockSummary summary = pyramid != null ? pyramid.get(x, y, width, height) : null;
+        if (summary != null) {
+            return errorMethod.error(summary);
+        }
+        return canSplit
+            ? ErrorCalculator.calculateError(errorStats, x, y, width, height, errorMethod, threshold)
+            : ErrorCalculator.calculateError(errorStats, x, y, width, height, errorMethod);
+    }
+    
+    private Node buildTree(int x, int y, int width, int height, int currentDepth) {
+        // Track stats
+        track(currentDepth);
         
         // Get block info
-        int[] avgColor = ErrorCalculator.calculateAvgColor(image, x, y, width, height);
-        double error = ErrorCalculator.calculateError(image, x, y, width, height, errorMethod);
+        int[] avgColor = ErrorCalculator.calculateAvgColor(stats, x, y, width, height);
+        
+        // Splittable blocks only need the threshold decision, leaves keep exact error
+        boolean canSplit = width > minBlockSize && height > minBlockSize;
+        double error = blockError(x, y, width, height, canSplit);
         
         // Create node
         Node node = new Node(x, y, width, height, avgColor, error);
         
         // Split if needed
-        if (error > threshold && width > minBlockSize && height > minBlockSize) {
-            int halfWidth = width / 2;
-            int halfHeight = height / 2;
+        if (canSplit && error > threshold) {
+            int[] cut = splitPoint(x, y, width, height);
+            int halfWidth = cut[0];
+            int halfHeight = cut[1];
+            int restWidth = width - halfWidth;
+            int restHeight = height - halfHeight;
             
-            // Create children
-            Node topLeft = buildTree(image, x, y, halfWidth, halfHeight, currentDepth + 1);
-            Node topRight = buildTree(image, x + halfWidth, y, halfWidth, halfHeight, currentDepth + 1);
-            Node bottomLeft = buildTree(image, x, y + halfHeight, halfWidth, halfHeight, currentDepth + 1);
-            Node bottomRight = buildTree(image, x + halfWidth, y + halfHeight, halfWidth, halfHeight, currentDepth + 1);
+            // Create children, odd remainder goes right and down
+            Node topLeft = buildTree(x, y, halfWidth, halfHeight, currentDepth + 1);
+            Node topRight = buildTree(x + halfWidth, y, restWidth, halfHeight, currentDepth + 1);
+            Node bottomLeft = buildTree(x, y + halfHeight, halfWidth, restHeight, currentDepth + 1);
+            Node bottomRight = buildTree(x + halfWidth, y + halfHeight, restWidth, restHeight, currentDepth + 1);
             
             // Connect children
             node.split(topLeft, topRight, bottomLeft, bottomRight);
+            reportProgress(1, 0);
             
             // Capture frames
             int captureFrequency = calculateCaptureFrequency(currentDepth);
-            if (compressionSteps != null && stepCounter % captureFrequency == 0 && compressionSteps.size() < MAX_FRAMES) {
+            if (compressionSteps != null && stepCounter % captureFrequency == 0 && compressionSteps.size() < frameLimit) {
                 captureProgressFrame();
             }
             stepCounter++;
+        } else {
+            reportProgress(1, (long) width * height);
         }
         
         return node;
@@ -98,7 +627,7 @@ public class Quadtree {
         if (depth <= 2) return 1;
         
         // Based on size
-        int totalPixels = originalImage.getWidth() * originalImage.getHeight();
+        int totalPixels = imageWidth * imageHeight;
         if (totalPixels < 250000) {
             return 2; 
         } else if (totalPixels < 1000000) {
@@ -110,33 +639,23 @@ public class Quadtree {
     
     // Capture compression progress
     private void captureProgressFrame() {
-        try {
-            // Create new image
-            BufferedImage stepImage = new BufferedImage(
-                originalImage.getWidth(), originalImage.getHeight(), 
-                BufferedImage.TYPE_INT_RGB);
-            
-            // Draw background
-            Graphics2D g = stepImage.createGraphics();
-            g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.3f));
-            g.drawImage(originalImage, 0, 0, null);
-            
-            // Draw quadtree
-            g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f));
-            renderQuadtreeWithStrongBorders(stepImage, root, g);
-            g.dispose();
-            
-            // Save frame
-            compressionSteps.add(stepImage);
-            
-            // Free memory
-            if (originalImage.getWidth() * originalImage.getHeight() > 1000000) {
-                System.gc();
-            }
-        } catch (OutOfMemoryError e) {
-            System.out.println("Warning: Memory limit reached, stopping frame capture");
-            compressionSteps = null;
-        }
+        // Create new image
+        BufferedImage stepImage = new BufferedImage(
+            originalImage.getWidth(), originalImage.getHeight(), 
+            BufferedImage.TYPE_INT_RGB);
+        
+        // Draw background
+        Graphics2D g = stepImage.createGraphics();
+        g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.3f));
+        g.drawImage(originalImage, 0, 0, null);
+        
+        // Draw quadtree
+        g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f));
+        renderQuadtreeWithStrongBorders(stepImage, root, g);
+        g.dispose();
+        
+        // Save frame
+        compressionSteps.add(stepImage);
     }
 
     // Draw with thick borders
@@ -191,8 +710,17 @@ public class Quadtree {
 
     // Create compressed image
     public BufferedImage compressImage() {
-        int width = originalImage.getWidth();
-        int height = originalImage.getHeight();
+        int width = imageWidth;
+        int height = imageHeight;
+        
+        // Single-channel trees fill a gray raster directly
+        if (isGrayscale()) {
+            BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            renderInto(((DataBufferByte) result.getRaster().getDataBuffer()).getData(), width, 0, 0, root);
+            reportProgress(0, (long) width * height);
+            flushProgress();
+            return result;
+        }
         
         // Choose format
         int imageType = (width * height > 4000000) ? 
@@ -209,17 +737,13 @@ public class Quadtree {
                     int tileWidth = Math.min(tileSize, width - x);
                     int tileHeight = Math.min(tileSize, height - y);
                     renderTile(result, root, x, y, tileWidth, tileHeight);
-                    
-                    // Free memory
-                    if (x % 1024 == 0 && y % 1024 == 0) {
-                        System.gc();
-                    }
                 }
             }
         } else {
             // Render at once
             renderQuadtree(result, root);
         }
+        flushProgress();
         
         return result;
     }
@@ -246,6 +770,7 @@ public class Quadtree {
                 g.setColor(node.getColor());
                 g.fillRect(x1, y1, x2 - x1, y2 - y1);
                 g.dispose();
+                reportProgress(0, (long) (x2 - x1) * (y2 - y1));
             }
         } else {
             // Check children
@@ -271,6 +796,7 @@ public class Quadtree {
             g.setColor(node.getColor());
             g.fillRect(node.getX(), node.getY(), node.getWidth(), node.getHeight());
             g.dispose();
+            reportProgress(0, (long) node.getWidth() * node.getHeight());
         } else {
             // Draw children
             renderQuadtree(image, node.getTopLeft());
@@ -280,6 +806,175 @@ public class Quadtree {
         }
     }
     
+    // Leaf averages as channel planes
+    public PixelPlanes renderPlanes() {
+        int channels = root.getAvgColor().length;
+        byte[][] planes = new byte[channels][imageWidth * imageHeight];
+        fillPlanes(planes, root);
+        return new PixelPlanes(imageWidth, imageHeight, planes);
+    }
+    
+    private void fillPlanes(byte[][] planes, Node node) {
+        if (node == null) return;
+        
+        if (node.isLeaf()) {
+            int[] avgColor = node.getAvgColor();
+            for (int c = 0; c < planes.length; c++) {
+                byte value = (byte) avgColor[c];
+                for (int row = node.getY(); row < node.getY() + node.getHeight(); row++) {
+                    int offset = row * imageWidth + node.getX();
+                    Arrays.fill(planes[c], offset, offset + node.getWidth(), value);
+                }
+            }
+        } else {
+            fillPlanes(planes, node.getTopLeft());
+            fillPlanes(planes, node.getTopRight());
+            fillPlanes(planes, node.getBottomLeft());
+            fillPlanes(planes, node.getBottomRight());
+        }
+    }
+    
+    // Fill packed RGB raster, tree placed at offset
+    public void renderInto(int[] pixels, int stride, int offsetX, int offsetY) {
+        renderInto(pixels, stride, offsetX, offsetY, root);
+    }
+    
+    private void renderInto(int[] pixels, int stride, int offsetX, int offsetY, Node node) {
+        if (node == null) return;
+        
+        if (node.isLeaf()) {
+            int rgb = node.getColor().getRGB() & 0xFFFFFF;
+            for (int row = node.getY(); row < node.getY() + node.getHeight(); row++) {
+                int offset = (offsetY + row) * stride + offsetX + node.getX();
+                Arrays.fill(pixels, offset, offset + node.getWidth(), rgb);
+            }
+        } else {
+            renderInto(pixels, stride, offsetX, offsetY, node.getTopLeft());
+            renderInto(pixels, stride, offsetX, offsetY, node.getTopRight());
+            renderInto(pixels, stride, offsetX, offsetY, node.getBottomLeft());
+            renderInto(pixels, stride, offsetX, offsetY, node.getBottomRight());
+        }
+    }
+    
+    // Fill gray raster, tree placed at offset
+    public void renderInto(byte[] pixels, int stride, int offsetX, int offsetY) {
+        renderInto(pixels, stride, offsetX, offsetY, root);
+    }
+    
+    private void renderInto(byte[] pixels, int stride, int offsetX, int offsetY, Node node) {
+        if (node == null) return;
+        
+        if (node.isLeaf()) {
+            byte value = (byte) node.getAvgColor()[0];
+            for (int row = node.getY(); row < node.getY() + node.getHeight(); row++) {
+                int offset = (offsetY + row) * stride + offsetX + node.getX();
+                Arrays.fill(pixels, offset, offset + node.getWidth(), value);
+            }
+        } else {
+            renderInto(pixels, stride, offsetX, offsetY, node.getTopLeft());
+            renderInto(pixels, stride, offsetX, offsetY, node.getTopRight());
+            renderInto(pixels, stride, offsetX, offsetY, node.getBottomLeft());
+            renderInto(pixels, stride, offsetX, offsetY, node.getBottomRight());
+        }
+    }
+    
+    // Rasterize directly at any size, sub-pixel subtrees drawn as their average
+    public BufferedImage render(int targetWidth, int targetHeight) {
+        if (targetWidth < 1 || targetHeight < 1) {
+            throw new IllegalArgumentException("Target size must be positive");
+        }
+        BufferedImage result = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+        double[] coverage = new double[targetWidth * targetHeight * 4];
+        
+        renderView(coverage, targetWidth, targetHeight, 0, 0,
+            (double) targetWidth / imageWidth, (double) targetHeight / imageHeight, root);
+        flushProgress();
+        resolveCoverage(coverage, pixels);
+        if (isGrayscale()) {
+            BufferedImage gray = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_BYTE_GRAY);
+            byte[] levels = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+            for (int p = 0; p < pixels.length; p++) levels[p] = (byte) pixels[p];
+            return gray;
+        }
+        return result;
+    }
+    
+    // Crop of the image at any zoom, scale is output pixels per source pixel
+    public BufferedImage renderViewport(double x, double y, int width, int height, double scale) {
+        if (width < 1 || height < 1 || !(scale > 0)) {
+            throw new IllegalArgumentException("Viewport size and scale must be positive");
+        }
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+        double[] coverage = new double[width * height * 4];
+        
+        renderView(coverage, width, height, x, y, scale, scale, root);
+        flushProgress();
+        resolveCoverage(coverage, pixels);
+        return result;
+    }
+    
+    // Box-filter the tree into per-pixel color and area sums
+    private void renderView(double[] coverage, int targetWidth, int targetHeight, double viewX, double viewY,
+                            double scaleX, double scaleY, Node node) {
+        if (node == null) return;
+        
+        double x0 = (node.getX() - viewX) * scaleX;
+        double x1 = (node.getX() + node.getWidth() - viewX) * scaleX;
+        double y0 = (node.getY() - viewY) * scaleY;
+        double y1 = (node.getY() + node.getHeight() - viewY) * scaleY;
+        
+        // Outside the target
+        if (x1 <= 0 || y1 <= 0 || x0 >= targetWidth || y0 >= targetHeight) return;
+        
+        // Descend until a node fits inside one target pixel
+        if (!node.isLeaf() && (x1 - x0 > 1 || y1 - y0 > 1)) {
+            renderView(coverage, targetWidth, targetHeight, viewX, viewY, scaleX, scaleY, node.getTopLeft());
+            renderView(coverage, targetWidth, targetHeight, viewX, viewY, scaleX, scaleY, node.getTopRight());
+            renderView(coverage, targetWidth, targetHeight, viewX, viewY, scaleX, scaleY, node.getBottomLeft());
+            renderView(coverage, targetWidth, targetHeight, viewX, viewY, scaleX, scaleY, node.getBottomRight());
+            return;
+        }
+        
+        reportProgress(0, (long) node.getWidth() * node.getHeight());
+        int rgb = LinearQuadtree.packColor(node.getAvgColor());
+        double red = (rgb >> 16) & 0xFF;
+        double green = (rgb >> 8) & 0xFF;
+        double blue = rgb & 0xFF;
+        
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(targetWidth, x1);
+        y1 = Math.min(targetHeight, y1);
+        int lastCol = (int) Math.ceil(x1) - 1;
+        int lastRow = (int) Math.ceil(y1) - 1;
+        
+        for (int row = (int) y0; row <= lastRow; row++) {
+            double coverY = Math.min(y1, row + 1) - Math.max(y0, row);
+            for (int col = (int) x0; col <= lastCol; col++) {
+                double weight = coverY * (Math.min(x1, col + 1) - Math.max(x0, col));
+                int i = (row * targetWidth + col) * 4;
+                coverage[i] += red * weight;
+                coverage[i + 1] += green * weight;
+                coverage[i + 2] += blue * weight;
+                coverage[i + 3] += weight;
+            }
+        }
+    }
+    
+    private static void resolveCoverage(double[] coverage, int[] pixels) {
+        for (int p = 0; p < pixels.length; p++) {
+            int i = p * 4;
+            double weight = coverage[i + 3];
+            if (weight <= 0) continue;
+            int r = (int) (coverage[i] / weight + 0.5);
+            int g = (int) (coverage[i + 1] / weight + 0.5);
+            int b = (int) (coverage[i + 2] / weight + 0.5);
+            pixels[p] = (r << 16) | (g << 8) | b;
+        }
+    }
+    
     // Render with null check
     private void renderQuadtreePartial(BufferedImage image, Node node) {
         if (node == null) return;
@@ -304,4 +999,18 @@ public class Quadtree {
     public int getDepth() { return depth; }
     public int getNodeCount() { return nodeCount; }
     public Node getRoot() { return root; }
+    public BlockStatistics getStatistics() {
+        // Callers may hold on to these, the next update copies the planes first
+        ownsPlanes = false;
+        return stats;
+    }
+    public int getWidth() { return imageWidth; }
+    public int getHeight() { return imageHeight; }
+    public int getMinBlockSize() { return minBlockSize; }
+    public double getThreshold() { return threshold; }
+    public ErrorMetric getErrorMethod() { return errorMethod; }
+    public boolean isGrayscale() { return root != null && root.getAvgColor().length == 1; }
+    public int getReusedNodes() { return reusedNodes; }
+    public int getRebuiltNodes() { return rebuiltNodes; }
+    public boolean isAdaptiveSplits() { return adaptiveSplits; }
 }
\ No newline at end of file
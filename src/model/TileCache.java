@@ -0,0 +1,151 @@
+package src.model;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// LRU cache of rendered viewer tiles, level L is scale 2^L
+public class TileCache {
+    private static final int MIN_LEVEL = -30;
+    private static final int MAX_LEVEL = 30;
+
+    private final Quadtree tree;
+    private final int tileSize;
+    private final int maxTiles;
+    private final LinkedHashMap<Long, BufferedImage> tiles;
+    private final Consumer<Rectangle> invalidator = this::invalidate;
+
+    // Metrics
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public TileCache(Quadtree tree, int tileSize, int maxTiles) {
+        if (tileSize < 1 || maxTiles < 1) {
+            throw new IllegalArgumentException("Tile size and cache capacity must be positive");
+        }
+        this.tree = tree;
+        this.tileSize = tileSize;
+        this.maxTiles = maxTiles;
+
+        // Access order, eldest is least recently used
+        this.tiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+                if (size() > TileCache.this.maxTiles) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        
+        // Edits drop the tiles they overlap
+        tree.addUpdateListener(invalidator);
+    }
+
+    // One tile in level pixel coordinates
+    public synchronized BufferedImage getTile(int level, int tileX, int tileY) {
+        Long key = key(level, tileX, tileY);
+        BufferedImage tile = tiles.get(key);
+        if (tile != null) {
+            hits++;
+            return tile;
+        }
+
+        misses++;
+        double scale = Math.scalb(1.0, level);
+        tile = tree.renderViewport(tileX * tileSize / scale, tileY * tileSize / scale, tileSize, tileSize, scale);
+        tiles.put(key, tile);
+        return tile;
+    }
+
+    // Power-of-two scales are composed from cached tiles, others render directly
+    public BufferedImage renderViewport(double x, double y, int width, int height, double scale) {
+        int level = Math.getExponent(scale);
+        if (scale != Math.scalb(1.0, level) || level < MIN_LEVEL || level > MAX_LEVEL) {
+            return tree.renderViewport(x, y, width, height, scale);
+        }
+
+        // Pan in whole level pixels so tiles line up
+        long originX = Math.round(x * scale);
+        long originY = Math.round(y * scale);
+        int firstX = (int) Math.floorDiv(originX, tileSize);
+        int firstY = (int) Math.floorDiv(originY, tileSize);
+        int lastX = (int) Math.floorDiv(originX + width - 1, tileSize);
+        int lastY = (int) Math.floorDiv(originY + height - 1, tileSize);
+
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = result.createGraphics();
+        for (int ty = firstY; ty <= lastY; ty++) {
+            for (int tx = firstX; tx <= lastX; tx++) {
+                if (!insideImage(level, tx, ty)) continue;
+                g.drawImage(getTile(level, tx, ty),
+                    (int) ((long) tx * tileSize - originX), (int) ((long) ty * tileSize - originY), null);
+            }
+        }
+        g.dispose();
+        return result;
+    }
+
+    // Tiles past the image edge stay black without a render
+    private boolean insideImage(int level, int tileX, int tileY) {
+        double scale = Math.scalb(1.0, level);
+        return tileX >= 0 && tileY >= 0
+            && tileX * (double) tileSize < tree.getWidth() * scale
+            && tileY * (double) tileSize < tree.getHeight() * scale;
+    }
+
+    private static long key(int level, int tileX, int tileY) {
+        if (tileX < 0 || tileY < 0 || tileX >= (1 << 28) || tileY >= (1 << 28)) {
+            throw new IllegalArgumentException("Tile index out of range");
+        }
+        return ((long) (level - MIN_LEVEL) << 56) | ((long) tileX << 28) | tileY;
+    }
+
+    // Drop tiles at every level whose source area overlaps the region
+    public synchronized void invalidate(Rectangle region) {
+        Iterator<Long> keys = tiles.keySet().iterator();
+        while (keys.hasNext()) {
+            long key = keys.next();
+            double scale = Math.scalb(1.0, (int) (key >>> 56) + MIN_LEVEL);
+            long tileX = (key >>> 28) & ((1 << 28) - 1);
+            long tileY = key & ((1 << 28) - 1);
+            double x0 = tileX * tileSize / scale;
+            double y0 = tileY * tileSize / scale;
+            double extent = tileSize / scale;
+            if (x0 < region.getMaxX() && x0 + extent > region.getX()
+                    && y0 < region.getMaxY() && y0 + extent > region.getY()) {
+                keys.remove();
+                invalidations++;
+            }
+        }
+    }
+    
+    public synchronized void clear() {
+        tiles.clear();
+    }
+    
+    // Stop following edits of the tree
+    public void close() {
+        tree.removeUpdateListener(invalidator);
+    }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized long getInvalidations() { return invalidations; }
+    public synchronized int getSize() { return tiles.size(); }
+    public int getTileSize() { return tileSize; }
+    public int getMaxTiles() { return maxTiles; }
+}
\ No newline at end of file
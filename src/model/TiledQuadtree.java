@@ -0,0 +1,156 @@
+package src.model;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import src.error.BlockStatistics;
+import src.error.ErrorCalculator;
+import src.error.ErrorMetric;
+import src.util.PixelPlanes;
+import src.util.ProgressTracker;
+
+// One independent quadtree per fixed-size tile
+public class TiledQuadtree {
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final BufferedImage result;
+    private final List<TileResult> tiles = new ArrayList<>();
+
+    // Outcome of one tile
+    public static class TileResult {
+        private final int x, y, width, height;
+        private final int nodeCount;
+        private final int depth;
+        private final long buildTimeMs;
+
+        TileResult(int x, int y, int width, int height, int nodeCount, int depth, long buildTimeMs) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.nodeCount = nodeCount;
+            this.depth = depth;
+            this.buildTimeMs = buildTimeMs;
+        }
+
+        public int getX() { return x; }
+        public int getY() { return y; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+        public int getNodeCount() { return nodeCount; }
+        public int getDepth() { return depth; }
+        public long getBuildTimeMs() { return buildTimeMs; }
+    }
+
+    public TiledQuadtree(PixelPlanes planes, int tileSize, int minBlockSize, double threshold,
+                         ErrorMetric errorMethod, int threads) {
+        this(planes, tileSize, minBlockSize, threshold, errorMethod, threads, null);
+    }
+
+    // Tile builds share the tracker, a cancel stops the remaining tiles
+    public TiledQuadtree(PixelPlanes planes, int tileSize, int minBlockSize, double threshold,
+                         ErrorMetric errorMethod, int threads, ProgressTracker progress) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        this.width = planes.getWidth();
+        this.height = planes.getHeight();
+        this.tileSize = tileSize;
+        this.result = new BufferedImage(width, height,
+            planes.getChannels() == 1 ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+
+        // Tiles write disjoint raster regions
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<TileResult>> futures = new ArrayList<>();
+            for (int ty = 0; ty < height; ty += tileSize) {
+                for (int tx = 0; tx < width; tx += tileSize) {
+                    final int x = tx;
+                    final int y = ty;
+                    final int w = Math.min(tileSize, width - tx);
+                    final int h = Math.min(tileSize, height - ty);
+                    futures.add(pool.submit(() ->
+                        buildTile(planes, x, y, w, h, minBlockSize, threshold, errorMethod, progress)));
+                }
+            }
+
+            for (Future<TileResult> future : futures) {
+                tiles.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tile compression interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                throw (CancellationException) e.getCause();
+            }
+            throw new IllegalStateException("Tile compression failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Crop, build, render, then drop the tile tree
+    private TileResult buildTile(PixelPlanes planes, int x, int y, int w, int h, int minBlockSize,
+                                 double threshold, ErrorMetric errorMethod, ProgressTracker progress) {
+        long start = System.currentTimeMillis();
+        if (progress != null) {
+            progress.checkCancelled();
+        }
+
+        PixelPlanes tile = planes.crop(x, y, w, h);
+        BlockStatistics stats = BlockStatistics.compute(tile, ErrorCalculator.needsSquares(errorMethod));
+        Quadtree tree = new Quadtree(stats, minBlockSize, threshold, errorMethod, false, false, progress);
+        DataBuffer buffer = result.getRaster().getDataBuffer();
+        if (buffer instanceof DataBufferByte) {
+            tree.renderInto(((DataBufferByte) buffer).getData(), width, x, y);
+        } else {
+            tree.renderInto(((DataBufferInt) buffer).getData(), width, x, y);
+        }
+
+        return new TileResult(x, y, w, h, tree.getNodeCount(), tree.getDepth(),
+            System.currentTimeMillis() - start);
+    }
+
+    // Stitched output
+    public BufferedImage compressImage() {
+        return result;
+    }
+
+    // Rolled-up stats
+    public int getNodeCount() {
+        int total = 0;
+        for (TileResult tile : tiles) total += tile.getNodeCount();
+        return total;
+    }
+
+    public int getDepth() {
+        int depth = 0;
+        for (TileResult tile : tiles) depth = Math.max(depth, tile.getDepth());
+        return depth;
+    }
+
+    public int getMinTileNodes() {
+        int min = Integer.MAX_VALUE;
+        for (TileResult tile : tiles) min = Math.min(min, tile.getNodeCount());
+        return tiles.isEmpty() ? 0 : min;
+    }
+
+    public int getMaxTileNodes() {
+        int max = 0;
+        for (TileResult tile : tiles) max = Math.max(max, tile.getNodeCount());
+        return max;
+    }
+
+    public List<TileResult> getTiles() { return tiles; }
+    public int getTileSize() { return tileSize; }
+}
\ No newline at end of file
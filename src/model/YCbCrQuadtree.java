@@ -0,0 +1,148 @@
+package src.model;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import src.error.BlockStatistics;
+import src.error.ErrorCalculator;
+import src.error.ErrorMetric;
+import src.util.PixelPlanes;
+import src.util.ProgressTracker;
+
+// Separate luma and half-resolution chroma trees
+public class YCbCrQuadtree {
+    private final int width;
+    private final int height;
+    private final Quadtree luma;
+    private final Quadtree blueChroma;
+    private final Quadtree redChroma;
+
+    public YCbCrQuadtree(PixelPlanes rgb, int minBlockSize, double threshold,
+                         int chromaMinBlockSize, double chromaThreshold,
+                         ErrorMetric errorMethod, boolean captureSteps) {
+        this(rgb, minBlockSize, threshold, chromaMinBlockSize, chromaThreshold, errorMethod, captureSteps, null);
+    }
+
+    // Luma and both chroma builds report to the tracker
+    public YCbCrQuadtree(PixelPlanes rgb, int minBlockSize, double threshold,
+                         int chromaMinBlockSize, double chromaThreshold,
+                         ErrorMetric errorMethod, boolean captureSteps, ProgressTracker progress) {
+        if (!errorMethod.usesSourcePlanes()) {
+            throw new IllegalArgumentException(errorMethod.getName() + " cannot measure single YCbCr planes");
+        }
+        this.width = rgb.getWidth();
+        this.height = rgb.getHeight();
+        boolean needSquares = ErrorCalculator.needsSquares(errorMethod);
+
+        PixelPlanes[] ycc = toYCbCr(rgb);
+
+        // Fine luma tree, frames show luma formation
+        BlockStatistics lumaStats = BlockStatistics.compute(ycc[0], needSquares);
+        this.luma = new Quadtree(lumaStats, minBlockSize, threshold, errorMethod, captureSteps, false, progress);
+
+        // 2x2 box-averaged chroma
+        PixelPlanes chroma = subsample(BlockStatistics.compute(ycc[1], false));
+        PixelPlanes cb = new PixelPlanes(chroma.getWidth(), chroma.getHeight(), new byte[][] { chroma.getPlane(0) });
+        PixelPlanes cr = new PixelPlanes(chroma.getWidth(), chroma.getHeight(), new byte[][] { chroma.getPlane(1) });
+
+        this.blueChroma = new Quadtree(BlockStatistics.compute(cb, needSquares),
+            chromaMinBlockSize, chromaThreshold, errorMethod, false, false, progress);
+        this.redChroma = new Quadtree(BlockStatistics.compute(cr, needSquares),
+            chromaMinBlockSize, chromaThreshold, errorMethod, false, false, progress);
+    }
+
+    // Full-range BT.601 split into Y and CbCr planes
+    public static PixelPlanes[] toYCbCr(PixelPlanes rgb) {
+        int size = rgb.getWidth() * rgb.getHeight();
+        byte[] r = rgb.getPlane(0);
+        byte[] g = rgb.getPlane(1);
+        byte[] b = rgb.getPlane(2);
+        byte[] y = new byte[size];
+        byte[] cb = new byte[size];
+        byte[] cr = new byte[size];
+
+        for (int i = 0; i < size; i++) {
+            int red = r[i] & 0xFF;
+            int green = g[i] & 0xFF;
+            int blue = b[i] & 0xFF;
+            y[i] = (byte) clamp(0.299 * red + 0.587 * green + 0.114 * blue);
+            cb[i] = (byte) clamp(128 - 0.168736 * red - 0.331264 * green + 0.5 * blue);
+            cr[i] = (byte) clamp(128 + 0.5 * red - 0.418688 * green - 0.081312 * blue);
+        }
+
+        return new PixelPlanes[] {
+            new PixelPlanes(rgb.getWidth(), rgb.getHeight(), new byte[][] { y }),
+            new PixelPlanes(rgb.getWidth(), rgb.getHeight(), new byte[][] { cb, cr })
+        };
+    }
+
+    // Boxes aligned to even pixels, odd edge keeps a 1-pixel box
+    private static PixelPlanes subsample(BlockStatistics stats) {
+        int width = stats.getWidth();
+        int height = stats.getHeight();
+        int halfWidth = (width + 1) / 2;
+        int halfHeight = (height + 1) / 2;
+        byte[][] planes = new byte[stats.getChannels()][halfWidth * halfHeight];
+
+        for (int c = 0; c < planes.length; c++) {
+            for (int cy = 0; cy < halfHeight; cy++) {
+                int boxHeight = Math.min(2, height - 2 * cy);
+                for (int cx = 0; cx < halfWidth; cx++) {
+                    int boxWidth = Math.min(2, width - 2 * cx);
+                    long area = (long) boxWidth * boxHeight;
+                    long sum = stats.sum(c, 2 * cx, 2 * cy, boxWidth, boxHeight);
+                    planes[c][cy * halfWidth + cx] = (byte) ((sum + area / 2) / area);
+                }
+            }
+        }
+
+        return new PixelPlanes(halfWidth, halfHeight, planes);
+    }
+
+    // Recompose RGB from the three trees
+    public BufferedImage compressImage() {
+        byte[] y = luma.renderPlanes().getPlane(0);
+        PixelPlanes cbPlanes = blueChroma.renderPlanes();
+        byte[] cb = cbPlanes.getPlane(0);
+        byte[] cr = redChroma.renderPlanes().getPlane(0);
+        int chromaWidth = cbPlanes.getWidth();
+
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+
+        for (int row = 0; row < height; row++) {
+            int chromaRow = (row >> 1) * chromaWidth;
+            for (int col = 0; col < width; col++) {
+                int i = row * width + col;
+                int c = chromaRow + (col >> 1);
+                double luminance = y[i] & 0xFF;
+                double blue = (cb[c] & 0xFF) - 128;
+                double red = (cr[c] & 0xFF) - 128;
+                int r = clamp(luminance + 1.402 * red);
+                int g = clamp(luminance - 0.344136 * blue - 0.714136 * red);
+                int b = clamp(luminance + 1.772 * blue);
+                pixels[i] = (r << 16) | (g << 8) | b;
+            }
+        }
+
+        return result;
+    }
+
+    private static int clamp(double value) {
+        int v = (int) Math.round(value);
+        return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+
+    // Combined tree stats
+    public int getNodeCount() {
+        return luma.getNodeCount() + blueChroma.getNodeCount() + redChroma.getNodeCount();
+    }
+
+    public int getDepth() {
+        return Math.max(luma.getDepth(), Math.max(blueChroma.getDepth(), redChroma.getDepth()));
+    }
+
+    // Plane trees
+    public Quadtree getLuma() { return luma; }
+    public Quadtree getBlueChroma() { return blueChroma; }
+    public Quadtree getRedChroma() { return redChroma; }
+}
\ No newline at end of file
@@ -0,0 +1,334 @@
+package src.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import src.compression.CompressionStats;
+import src.compression.ImageCompressor;
+import src.compression.StatsCache;
+import src.error.ErrorMetric;
+import src.error.ErrorMetrics;
+import src.util.CancellationToken;
+import src.util.MemoryBudget;
+
+// Long-running local compression service
+public class CompressionServer {
+    private final int port;
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final Semaphore permits;
+    private final MemoryBudget budget;
+    private HttpServer server;
+    private ExecutorService executor;
+    private ScheduledExecutorService timeouts;
+    private StatsCache cache;
+
+    // Metrics
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger peakQueued = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+
+    public CompressionServer(int port, int maxInFlight, int maxQueued) {
+        this.port = port;
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+        this.permits = new Semaphore(maxInFlight, true);
+        // Concurrent requests split the heap instead of each assuming all of it
+        this.budget = MemoryBudget.fromSystem().share(maxInFlight);
+    }
+
+    // Share cache across requests
+    public void setCache(StatsCache cache) {
+        this.cache = cache;
+    }
+
+    // Bind to loopback and serve
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = createExecutor();
+        timeouts = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "compression-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/compress", this::handleCompress);
+        server.createContext("/metrics", this::handleMetrics);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (timeouts != null) {
+            timeouts.shutdownNow();
+        }
+    }
+
+    // Virtual threads when the runtime has them
+    private static ExecutorService createExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public static boolean usesVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    // POST image bytes, get image and stats
+    private void handleCompress(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, error("Use POST with the image as request body"));
+                return;
+            }
+
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            ErrorMetric method;
+            double threshold;
+            int minBlockSize;
+            double targetRatio;
+            long timeoutMs;
+            try {
+                method = ErrorMetrics.getById(Integer.parseInt(params.getOrDefault("method", "1")));
+                threshold = Double.parseDouble(params.getOrDefault("threshold", "50"));
+                minBlockSize = Integer.parseInt(params.getOrDefault("minBlockSize", "4"));
+                targetRatio = Double.parseDouble(params.getOrDefault("targetRatio", "0"));
+                timeoutMs = Long.parseLong(params.getOrDefault("timeoutMs", "0"));
+            } catch (NumberFormatException e) {
+                sendJson(exchange, 400, error("Invalid number: " + e.getMessage()));
+                return;
+            }
+            String format = params.getOrDefault("format", "png").toLowerCase();
+
+            if (!format.matches("png|jpg|jpeg|bmp")) {
+                sendJson(exchange, 400, error("Unsupported output format: " + format));
+                return;
+            }
+
+            if (method == null || threshold <= 0 || minBlockSize < 1 || targetRatio < 0 || targetRatio > 1
+                    || timeoutMs < 0) {
+                sendJson(exchange, 400, error("Invalid compression parameters"));
+                return;
+            }
+
+            // Start at once when a permit is free, only requests that must wait count against the queue
+            try {
+                if (!permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                    if (queued.incrementAndGet() > maxQueued) {
+                        queued.decrementAndGet();
+                        rejected.incrementAndGet();
+                        sendJson(exchange, 503, error("Server busy, try again later"));
+                        return;
+                    }
+                    peakQueued.accumulateAndGet(queued.get(), Math::max);
+                    try {
+                        permits.acquire();
+                    } finally {
+                        queued.decrementAndGet();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sendJson(exchange, 503, error("Interrupted while queued"));
+                return;
+            }
+
+            inFlight.incrementAndGet();
+            long start = System.currentTimeMillis();
+            try {
+                String body = compress(exchange.getRequestBody(), method, threshold, minBlockSize, targetRatio, format,
+                    timeoutMs);
+                completed.incrementAndGet();
+                totalLatencyMs.addAndGet(System.currentTimeMillis() - start);
+                sendJson(exchange, 200, body);
+            } catch (CancellationException e) {
+                timedOut.incrementAndGet();
+                sendJson(exchange, 504, error("Compression exceeded " + timeoutMs + " ms"));
+            } catch (IOException | RuntimeException e) {
+                failed.incrementAndGet();
+                sendJson(exchange, 500, error(e.getMessage()));
+            } finally {
+                inFlight.decrementAndGet();
+                permits.release();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Run the regular pipeline on temp files, cancelled after timeoutMs when positive
+    private String compress(InputStream body, ErrorMetric method, double threshold, int minBlockSize,
+                            double targetRatio, String format, long timeoutMs) throws IOException {
+        Path input = Files.createTempFile("quadtree-in-", ".img");
+        Path output = Files.createTempFile("quadtree-out-", "." + format);
+        CancellationToken token = new CancellationToken();
+        ScheduledFuture<?> deadline = null;
+        try {
+            Files.copy(body, input, StandardCopyOption.REPLACE_EXISTING);
+
+            ImageCompressor compressor = new ImageCompressor(
+                input.toString(), output.toString(), null, method, threshold, minBlockSize, targetRatio);
+            compressor.setCache(cache);
+            compressor.setMemoryBudget(budget);
+            compressor.setCancellationToken(token);
+            if (timeoutMs > 0) {
+                deadline = timeouts.schedule(token::cancel, timeoutMs, TimeUnit.MILLISECONDS);
+            }
+            CompressionStats stats = compressor.compress();
+
+            byte[] image = Files.readAllBytes(output);
+            return "{\"stats\":" + stats.toJson()
+                + ",\"format\":\"" + format + "\""
+                + ",\"image\":\"" + Base64.getEncoder().encodeToString(image) + "\"}";
+        } finally {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+
+    // Queue and throughput counters
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            sendJson(exchange, 200, getMetricsJson());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    public String getMetricsJson() {
+        long done = completed.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        sb.append("\"virtualThreads\":").append(usesVirtualThreads()).append(",");
+        sb.append("\"maxInFlight\":").append(maxInFlight).append(",");
+        sb.append("\"maxQueued\":").append(maxQueued).append(",");
+        sb.append("\"inFlight\":").append(inFlight.get()).append(",");
+        sb.append("\"queueDepth\":").append(queued.get()).append(",");
+        sb.append("\"peakQueueDepth\":").append(peakQueued.get()).append(",");
+        sb.append("\"completed\":").append(done).append(",");
+        sb.append("\"failed\":").append(failed.get()).append(",");
+        sb.append("\"rejected\":").append(rejected.get()).append(",");
+        sb.append("\"timedOut\":").append(timedOut.get()).append(",");
+        sb.append("\"avgLatencyMs\":").append(done == 0 ? 0 : totalLatencyMs.get() / done);
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                           URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    private static String error(String message) {
+        return "{\"error\":\"" + escape(message == null ? "Unknown error" : message) + "\"}";
+    }
+
+    // JSON string escapes, other control characters as hex escapes
+    private static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            switch (ch) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (ch < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        sb.append(ch);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Run until killed
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int maxInFlight = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int maxQueued = args.length > 2 ? Integer.parseInt(args[2]) : 4 * maxInFlight;
+
+        CompressionServer server = new CompressionServer(port, maxInFlight, maxQueued);
+        String cacheDir = System.getProperty("quadtree.cache");
+        if (cacheDir != null && !cacheDir.isEmpty()) {
+            long cacheMb = Long.getLong("quadtree.cache.maxMB", 2048);
+            server.setCache(new StatsCache(new File(cacheDir), cacheMb * 1024 * 1024));
+        }
+        server.start();
+
+        System.out.println("Quadtree compression service listening on http://localhost:" + port);
+        System.out.println("POST /compress?method=1&threshold=50&minBlockSize=4&targetRatio=0&format=png");
+        System.out.println("GET  /metrics");
+        System.out.println("In-flight limit: " + maxInFlight + ", queue limit: " + maxQueued
+            + (usesVirtualThreads() ? ", virtual threads" : ", platform threads"));
+    }
+}
\ No newline at end of file
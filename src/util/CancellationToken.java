@@ -0,0 +1,23 @@
+package src.util;
+
+import java.util.concurrent.CancellationException;
+
+// Cooperative cancel flag, polled by long-running loops
+public class CancellationToken {
+    private volatile boolean cancelled;
+
+    // Safe to call from any thread
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Compression cancelled");
+        }
+    }
+}
\ No newline at end of file
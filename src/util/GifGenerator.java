@@ -37,9 +37,10 @@ public class GifGenerator {
             System.out.println("Scaling GIF to " + (int)(scale * 100) + "% to fit memory constraints");
         }
         
-        // Process frames
-        List<BufferedImage> processedFrames = preprocessFrames(frames, scale);
-        System.out.println("Processed " + processedFrames.size() + " frames for GIF");
+        // Pick frames, scaled and labeled one at a time while writing
+        List<BufferedImage> selectedFrames = selectFrames(frames);
+        boolean annotate = frames.size() > 2;
+        System.out.println("Processed " + selectedFrames.size() + " frames for GIF");
         
         // Get GIF writer
         ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
@@ -100,23 +101,16 @@ public class GifGenerator {
         writer.prepareWriteSequence(null);
         
         System.out.println("Writing frames to GIF...");
-        // Write normal frames
-        for (int i = 0; i < processedFrames.size() - 1; i++) {
-            writer.writeToSequence(new IIOImage(processedFrames.get(i), null, metadata), params);
-            
-            // Clear memory
-            if (i % 5 == 0 && width * height > 500000) {
-                processedFrames.set(i, null);
-                System.gc();
+        // Only one scaled frame is alive at a time
+        int count = selectedFrames.size();
+        for (int i = 0; i < count; i++) {
+            BufferedImage frame = selectedFrames.get(i);
+            if (annotate) {
+                frame = addFrameInfo(scaleImage(frame, scale), i, count);
             }
-        }
-        
-        // Write final frame
-        if (processedFrames.size() > 0) {
-            writer.writeToSequence(
-                new IIOImage(processedFrames.get(processedFrames.size() - 1), null, finalFrameMetadata), 
-                params
-            );
+            
+            // Final frame holds longer
+            writer.writeToSequence(new IIOImage(frame, null, i == count - 1 ? finalFrameMetadata : metadata), params);
         }
         
         // Clean up
@@ -127,7 +121,7 @@ public class GifGenerator {
         System.out.println("GIF created successfully at: " + outputPath);
     }
     
-    private static List<BufferedImage> preprocessFrames(List<BufferedImage> originalFrames, double scale) {
+    private static List<BufferedImage> selectFrames(List<BufferedImage> originalFrames) {
         if (originalFrames.size() <= 2) {
             return originalFrames; // Too few
         }
@@ -145,18 +139,17 @@ public class GifGenerator {
         if (step < 1) step = 1;
         
         // Add first frame
-        result.add(scaleImage(firstFrame, scale));
+        result.add(firstFrame);
         
         // Add middle frames
         for (int i = step; i < originalFrames.size() - 1; i += step) {
-            result.add(scaleImage(originalFrames.get(i), scale));
+            result.add(originalFrames.get(i));
         }
         
         // Add final frame
-        result.add(scaleImage(lastFrame, scale));
+        result.add(lastFrame);
         
-        // Add frame info
-        return addFrameInfo(result);
+        return result;
     }
     
     private static BufferedImage scaleImage(BufferedImage source, double scale) {
@@ -168,66 +161,53 @@ public class GifGenerator {
         int newWidth = (int)(source.getWidth() * scale);
         int newHeight = (int)(source.getHeight() * scale);
         
-        // Choose image type
-        int imageType = (newWidth * newHeight > 1000000) ? 
-                        BufferedImage.TYPE_3BYTE_BGR : 
-                        BufferedImage.TYPE_INT_RGB;
-                        
-        BufferedImage scaled = new BufferedImage(newWidth, newHeight, imageType);
-        
-        Graphics2D g = scaled.createGraphics();
-        g.drawImage(source, 0, 0, newWidth, newHeight, null);
-        g.dispose();
-        
-        return scaled;
+        // Box-filter from raster
+        return ImagePyramid.boxFilter(source, newWidth, newHeight).toImage();
     }
     
-    private static List<BufferedImage> addFrameInfo(List<BufferedImage> frames) {
-        // Add overlays
-        for (int i = 0; i < frames.size(); i++) {
-            BufferedImage frame = frames.get(i);
-            Graphics2D g = frame.createGraphics();
-            
-            // Info box
-            int boxWidth = 200;
-            int boxHeight = 50;
-            int boxX = 10;
-            int boxY = 10;
-            
-            // Draw background
-            g.setColor(new Color(0, 0, 0, 150));
-            g.fillRect(boxX, boxY, boxWidth, boxHeight);
-            
-            // Draw frame info
-            g.setColor(Color.WHITE);
-            String frameInfo = "Frame " + (i+1) + " of " + frames.size();
-            g.drawString(frameInfo, boxX + 10, boxY + 20);
-            
-            // Show progress
-            String progressLabel = i == 0 ? "Original Image" : 
-                                  i == frames.size()-1 ? "Final Compression" : 
-                                  "Quadtree Formation " + Math.round((i/(float)(frames.size()-1))*100) + "%";
-            g.drawString(progressLabel, boxX + 10, boxY + 40);
-            
-            // Progress bar
-            int barWidth = boxWidth - 20;
-            int barHeight = 8;
-            int barX = boxX + 10;
-            int barY = boxY + boxHeight - barHeight - 5;
-            
-            // Bar background
-            g.setColor(Color.DARK_GRAY);
-            g.fillRect(barX, barY, barWidth, barHeight);
-            
-            // Progress fill
-            g.setColor(Color.GREEN);
-            int fillWidth = (int)(barWidth * (i / (float)(frames.size() - 1)));
-            g.fillRect(barX, barY, fillWidth, barHeight);
-            
-            g.dispose();
-        }
+    private static BufferedImage addFrameInfo(BufferedImage frame, int i, int frameCount) {
+        // Add overlay
+        Graphics2D g = frame.createGraphics();
+        
+        // Info box
+        int boxWidth = 200;
+        int boxHeight = 50;
+        int boxX = 10;
+        int boxY = 10;
+        
+        // Draw background
+        g.setColor(new Color(0, 0, 0, 150));
+        g.fillRect(boxX, boxY, boxWidth, boxHeight);
+        
+        // Draw frame info
+        g.setColor(Color.WHITE);
+        String frameInfo = "Frame " + (i+1) + " of " + frameCount;
+        g.drawString(frameInfo, boxX + 10, boxY + 20);
+        
+        // Show progress
+        String progressLabel = i == 0 ? "Original Image" : 
+                              i == frameCount-1 ? "Final Compression" : 
+                              "Quadtree Formation " + Math.round((i/(float)(frameCount-1))*100) + "%";
+        g.drawString(progressLabel, boxX + 10, boxY + 40);
+        
+        // Progress bar
+        int barWidth = boxWidth - 20;
+        int barHeight = 8;
+        int barX = boxX + 10;
+        int barY = boxY + boxHeight - barHeight - 5;
+        
+        // Bar background
+        g.setColor(Color.DARK_GRAY);
+        g.fillRect(barX, barY, barWidth, barHeight);
+        
+        // Progress fill
+        g.setColor(Color.GREEN);
+        int fillWidth = (int)(barWidth * (i / (float)(frameCount - 1)));
+        g.fillRect(barX, barY, fillWidth, barHeight);
+        
+        g.dispose();
         
-        return frames;
+        return frame;
     }
     
     private static IIOMetadataNode getNode(IIOMetadataNode root, String name) {
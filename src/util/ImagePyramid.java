@@ -0,0 +1,145 @@
+package src.util;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import src.error.BlockStatistics;
+
+// Box-filtered 1/2, 1/4, ... levels
+public class ImagePyramid {
+    private final BlockStatistics stats;
+    private final List<PixelPlanes> levels = new ArrayList<>();
+
+    public ImagePyramid(BlockStatistics stats) {
+        this.stats = stats;
+        this.levels.add(stats.getPlanes());
+    }
+
+    // Level k is 1/2^k per axis
+    public PixelPlanes getLevel(int level) {
+        if (level < 0 || level >= getLevelCount()) {
+            throw new IllegalArgumentException("No pyramid level " + level);
+        }
+
+        while (levels.size() <= level) {
+            int k = levels.size();
+            levels.add(boxFilter(stats, stats.getWidth() >> k, stats.getHeight() >> k));
+        }
+        return levels.get(level);
+    }
+
+    // Levels down to a single pixel
+    public int getLevelCount() {
+        int count = 1;
+        while ((stats.getWidth() >> count) > 0 && (stats.getHeight() >> count) > 0) {
+            count++;
+        }
+        return count;
+    }
+
+    // Area average from integral tables, O(1) per output pixel
+    public static PixelPlanes boxFilter(BlockStatistics stats, int width, int height) {
+        checkTarget(stats.getWidth(), stats.getHeight(), width, height);
+
+        int[] colStart = boxStarts(stats.getWidth(), width);
+        int[] rowStart = boxStarts(stats.getHeight(), height);
+        byte[][] planes = new byte[stats.getChannels()][width * height];
+
+        for (int c = 0; c < planes.length; c++) {
+            byte[] plane = planes[c];
+            for (int oy = 0; oy < height; oy++) {
+                int y0 = rowStart[oy];
+                int boxHeight = rowStart[oy + 1] - y0;
+                for (int ox = 0; ox < width; ox++) {
+                    int x0 = colStart[ox];
+                    int boxWidth = colStart[ox + 1] - x0;
+                    long area = (long) boxWidth * boxHeight;
+                    long sum = stats.sum(c, x0, y0, boxWidth, boxHeight);
+                    plane[oy * width + ox] = (byte) ((sum + area / 2) / area);
+                }
+            }
+        }
+
+        return new PixelPlanes(width, height, planes);
+    }
+
+    // Area average in one streaming pass over rows
+    public static PixelPlanes boxFilter(BufferedImage image, int width, int height) {
+        int srcWidth = image.getWidth();
+        int srcHeight = image.getHeight();
+        checkTarget(srcWidth, srcHeight, width, height);
+
+        // Output column owning each source column
+        int[] colStart = boxStarts(srcWidth, width);
+        int[] colOwner = new int[srcWidth];
+        for (int ox = 0; ox < width; ox++) {
+            for (int x = colStart[ox]; x < colStart[ox + 1]; x++) colOwner[x] = ox;
+        }
+        int[] rowStart = boxStarts(srcHeight, height);
+
+        // Gray rasters accumulate their stored levels into one plane
+        boolean gray = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        byte[] grayRow = gray ? new byte[srcWidth] : null;
+
+        byte[] r = new byte[width * height];
+        byte[] g = gray ? null : new byte[width * height];
+        byte[] b = gray ? null : new byte[width * height];
+        long[] rAcc = new long[width];
+        long[] gAcc = new long[width];
+        long[] bAcc = new long[width];
+        int[] row = new int[srcWidth];
+
+        for (int oy = 0; oy < height; oy++) {
+            for (int y = rowStart[oy]; y < rowStart[oy + 1]; y++) {
+                if (gray) {
+                    image.getRaster().getDataElements(0, y, srcWidth, 1, grayRow);
+                    for (int x = 0; x < srcWidth; x++) rAcc[colOwner[x]] += grayRow[x] & 0xFF;
+                    continue;
+                }
+                image.getRGB(0, y, srcWidth, 1, row, 0, srcWidth);
+                for (int x = 0; x < srcWidth; x++) {
+                    int rgb = row[x];
+                    int ox = colOwner[x];
+                    rAcc[ox] += (rgb >> 16) & 0xFF;
+                    gAcc[ox] += (rgb >> 8) & 0xFF;
+                    bAcc[ox] += rgb & 0xFF;
+                }
+            }
+
+            // Flush finished output row
+            int boxHeight = rowStart[oy + 1] - rowStart[oy];
+            int offset = oy * width;
+            for (int ox = 0; ox < width; ox++) {
+                long area = (long) (colStart[ox + 1] - colStart[ox]) * boxHeight;
+                r[offset + ox] = (byte) ((rAcc[ox] + area / 2) / area);
+                rAcc[ox] = 0;
+                if (gray) continue;
+                g[offset + ox] = (byte) ((gAcc[ox] + area / 2) / area);
+                b[offset + ox] = (byte) ((bAcc[ox] + area / 2) / area);
+                gAcc[ox] = 0;
+                bAcc[ox] = 0;
+            }
+        }
+
+        if (gray) {
+            return new PixelPlanes(width, height, new byte[][] { r });
+        }
+        return new PixelPlanes(width, height, new byte[][] { r, g, b }).collapseGray();
+    }
+
+    // Source offset where each output box begins
+    private static int[] boxStarts(int srcSize, int dstSize) {
+        int[] starts = new int[dstSize + 1];
+        for (int i = 0; i <= dstSize; i++) {
+            starts[i] = (int) ((long) i * srcSize / dstSize);
+        }
+        return starts;
+    }
+
+    private static void checkTarget(int srcWidth, int srcHeight, int width, int height) {
+        if (width < 1 || height < 1 || width > srcWidth || height > srcHeight) {
+            throw new IllegalArgumentException(
+                "Cannot box-filter " + srcWidth + "x" + srcHeight + " to " + width + "x" + height);
+        }
+    }
+}
\ No newline at end of file
@@ -2,22 +2,22 @@ package src.util;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 public class ImageUtil {
     
     // Check file is image
     public static boolean isValidImageFile(String path) {
         try {
-            File file = new File(path);
-            if (!file.exists()) {
-                return false;
-            }
-            
-            return ImageIO.read(file) != null;
+            return probeDimensions(new File(path)) != null;
         } catch (IOException e) {
             return false;
         }
@@ -25,8 +25,66 @@ public class ImageUtil {
     
     // Get width and height
     public static int[] getImageDimensions(String path) throws IOException {
-        BufferedImage image = ImageIO.read(new File(path));
-        return new int[] { image.getWidth(), image.getHeight() };
+        int[] dimensions = probeDimensions(new File(path));
+        if (dimensions == null) {
+            throw new IOException("Not a valid image file: " + path);
+        }
+        return dimensions;
+    }
+    
+    // Read header only, null if no reader
+    public static int[] probeDimensions(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                return null;
+            }
+            
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new int[] { reader.getWidth(0), reader.getHeight(0) };
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    // Decode only a rectangle
+    public static BufferedImage readRegion(File file, int x, int y, int width, int height) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Not a valid image file: " + file.getPath());
+            }
+            
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle(x, y, width, height));
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    // Decode pixels once
+    public static BufferedImage readImage(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Not a valid image file: " + file.getPath());
+        }
+        return image;
     }
     
     // Clone image
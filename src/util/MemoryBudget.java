@@ -0,0 +1,95 @@
+package src.util;
+
+// Byte estimates per phase, checked before allocating
+public class MemoryBudget {
+    // Node object, its color array and references
+    public static final long NODE_BYTES = 112;
+
+    private final long budgetBytes;
+
+    public MemoryBudget(long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+        this.budgetBytes = budgetBytes;
+    }
+
+    // quadtree.memory.budgetMB, else three quarters of the max heap
+    public static MemoryBudget fromSystem() {
+        long configuredMb = Long.getLong("quadtree.memory.budgetMB", 0);
+        if (configuredMb > 0) {
+            return new MemoryBudget(configuredMb * 1024 * 1024);
+        }
+        return new MemoryBudget(Runtime.getRuntime().maxMemory() / 4 * 3);
+    }
+
+    // Equal share for one of parts concurrent jobs
+    public MemoryBudget share(int parts) {
+        if (parts < 1) {
+            throw new IllegalArgumentException("Budget must be shared by at least one job");
+        }
+        return new MemoryBudget(budgetBytes / parts);
+    }
+
+    // Decoded channel planes
+    public static long planeBytes(long pixels, int channels) {
+        return pixels * channels;
+    }
+
+    // Integral tables, one long per cell
+    public static long statsBytes(int width, int height, int channels, boolean withSquares) {
+        return (long) (width + 1) * (height + 1) * 8 * channels * (withSquares ? 2 : 1);
+    }
+
+    // Packed RGB raster, used for output and frames
+    public static long rasterBytes(long pixels) {
+        return pixels * 4;
+    }
+
+    // Compressed output, gray images use one byte per pixel
+    public static long outputBytes(long pixels, int channels) {
+        return channels == 1 ? pixels : rasterBytes(pixels);
+    }
+
+    // Worst case: every block split down to minimum size, only used to size tiles
+    public static long treeBytes(long pixels, int minBlockSize) {
+        long leaves = pixels / Math.max(1, (long) minBlockSize * minBlockSize) + 1;
+        return leaves * 4 / 3 * NODE_BYTES;
+    }
+
+    // Planes, statistics and output for a whole-image build, the tree depends on content and is not counted
+    public static long buildBytes(int width, int height, int channels, boolean withSquares) {
+        long pixels = (long) width * height;
+        return planeBytes(pixels, channels) + statsBytes(width, height, channels, withSquares)
+            + outputBytes(pixels, channels);
+    }
+
+    public boolean fits(long bytes) {
+        return bytes <= budgetBytes;
+    }
+
+    // Largest power-of-two tile whose per-tile work fits beside the full planes and output
+    public int tileSizeFor(int width, int height, int channels, boolean withSquares, int minBlockSize, int threads) {
+        long pixels = (long) width * height;
+        long shared = planeBytes(pixels, channels) + outputBytes(pixels, channels);
+        int tileSize = Integer.highestOneBit(Math.max(width, height));
+
+        while (tileSize > 64) {
+            long perTile = planeBytes((long) tileSize * tileSize, channels)
+                + statsBytes(tileSize, tileSize, channels, withSquares)
+                + treeBytes((long) tileSize * tileSize, minBlockSize);
+            if (shared + perTile * Math.max(1, threads) <= budgetBytes) break;
+            tileSize /= 2;
+        }
+        return tileSize;
+    }
+
+    // Frames affordable after the reserved bytes, at most limit
+    public int maxFrames(long framePixels, long reservedBytes, int limit) {
+        long free = budgetBytes - reservedBytes;
+        if (free <= 0) return 0;
+        return (int) Math.min(limit, free / rasterBytes(Math.max(1, framePixels)));
+    }
+
+    public long getBudgetBytes() { return budgetBytes; }
+}
\ No newline at end of file
@@ -0,0 +1,104 @@
+package src.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+// Long array outside the heap, direct or file-mapped chunks of 2^27 elements
+public class OffHeapLongArray {
+    private static final int CHUNK_SHIFT = 27;
+    private static final long CHUNK_LENGTH = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_LENGTH - 1;
+
+    private final long length;
+    private final LongBuffer[] chunks;
+    private final ByteBuffer[] bytes;
+
+    private OffHeapLongArray(long length, ByteBuffer[] bytes) {
+        this.length = length;
+        this.bytes = bytes;
+        this.chunks = new LongBuffer[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chunks[i] = bytes[i].order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+    }
+
+    // Zeroed native memory, counted against -XX:MaxDirectMemorySize
+    public static OffHeapLongArray allocateDirect(long length) {
+        ByteBuffer[] bytes = new ByteBuffer[chunkCount(length)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = ByteBuffer.allocateDirect((int) (8 * chunkLength(length, i)));
+        }
+        return new OffHeapLongArray(length, bytes);
+    }
+
+    // Elements at position in the file, paged in by the OS
+    public static OffHeapLongArray map(FileChannel channel, FileChannel.MapMode mode, long position, long length)
+            throws IOException {
+        ByteBuffer[] bytes = new ByteBuffer[chunkCount(length)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = channel.map(mode, position + 8 * CHUNK_LENGTH * i, 8 * chunkLength(length, i));
+        }
+        return new OffHeapLongArray(length, bytes);
+    }
+
+    private static int chunkCount(long length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Negative length");
+        }
+        return (int) ((length + CHUNK_LENGTH - 1) >>> CHUNK_SHIFT);
+    }
+
+    private static long chunkLength(long length, int chunk) {
+        return Math.min(CHUNK_LENGTH, length - ((long) chunk << CHUNK_SHIFT));
+    }
+
+    public long get(long index) {
+        return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+    }
+
+    public void set(long index, long value) {
+        chunks[(int) (index >>> CHUNK_SHIFT)].put((int) (index & CHUNK_MASK), value);
+    }
+
+    // Bulk copies split at chunk boundaries
+    public void put(long index, long[] source, int offset, int count) {
+        while (count > 0) {
+            LongBuffer chunk = chunks[(int) (index >>> CHUNK_SHIFT)];
+            int start = (int) (index & CHUNK_MASK);
+            int run = (int) Math.min(count, CHUNK_LENGTH - start);
+            chunk.put(start, source, offset, run);
+            index += run;
+            offset += run;
+            count -= run;
+        }
+    }
+
+    public void get(long index, long[] target, int offset, int count) {
+        while (count > 0) {
+            LongBuffer chunk = chunks[(int) (index >>> CHUNK_SHIFT)];
+            int start = (int) (index & CHUNK_MASK);
+            int run = (int) Math.min(count, CHUNK_LENGTH - start);
+            chunk.get(start, target, offset, run);
+            index += run;
+            offset += run;
+            count -= run;
+        }
+    }
+
+    // Native-order bytes to the channel, returns the position after them
+    public long writeTo(FileChannel channel, long position) throws IOException {
+        for (ByteBuffer chunk : bytes) {
+            ByteBuffer view = chunk.duplicate();
+            view.clear();
+            while (view.hasRemaining()) {
+                position += channel.write(view, position);
+            }
+        }
+        return position;
+    }
+
+    public long length() { return length; }
+}
\ No newline at end of file
@@ -0,0 +1,130 @@
+package src.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+// Decoded image as primitive channel planes
+public class PixelPlanes {
+    // Planes are byte[] indexed by int
+    public static final long MAX_PIXELS = Integer.MAX_VALUE - 8;
+
+    private final int width;
+    private final int height;
+    private final byte[][] planes;
+
+    public PixelPlanes(int width, int height, byte[][] planes) {
+        for (byte[] plane : planes) {
+            if (plane.length != (long) width * height) {
+                throw new IllegalArgumentException("Plane size does not match " + width + "x" + height);
+            }
+        }
+        this.width = width;
+        this.height = height;
+        this.planes = planes;
+    }
+
+    // Split image into R, G, B planes, or one plane when every pixel is gray
+    public static PixelPlanes fromImage(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if ((long) width * height > MAX_PIXELS) {
+            throw new IllegalArgumentException("Image exceeds " + MAX_PIXELS + " pixels");
+        }
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            byte[] gray = (byte[]) image.getRaster().getDataElements(0, 0, width, height, new byte[width * height]);
+            return new PixelPlanes(width, height, new byte[][] { gray });
+        }
+
+        // Stay single-plane until the first colored pixel
+        byte[] r = new byte[width * height];
+        byte[] g = null;
+        byte[] b = null;
+
+        // Read row by row
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int red = (rgb >> 16) & 0xFF;
+                int green = (rgb >> 8) & 0xFF;
+                int blue = rgb & 0xFF;
+                if (g == null) {
+                    if (red == green && green == blue) {
+                        r[offset + x] = (byte) red;
+                        continue;
+                    }
+                    g = Arrays.copyOf(r, r.length);
+                    b = Arrays.copyOf(r, r.length);
+                }
+                r[offset + x] = (byte) red;
+                g[offset + x] = (byte) green;
+                b[offset + x] = (byte) blue;
+            }
+        }
+
+        return g == null
+            ? new PixelPlanes(width, height, new byte[][] { r })
+            : new PixelPlanes(width, height, new byte[][] { r, g, b });
+    }
+
+    // Gray planes when all channels are equal, otherwise these planes
+    public PixelPlanes collapseGray() {
+        if (planes.length == 3 && Arrays.equals(planes[0], planes[1]) && Arrays.equals(planes[1], planes[2])) {
+            return new PixelPlanes(width, height, new byte[][] { planes[0] });
+        }
+        return this;
+    }
+
+    // Rebuild RGB image
+    public BufferedImage toImage() {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = getRGB(i);
+        }
+
+        return image;
+    }
+
+    // Deep copy, edits to it leave these planes untouched
+    public PixelPlanes copy() {
+        byte[][] copied = new byte[planes.length][];
+        for (int c = 0; c < planes.length; c++) copied[c] = planes[c].clone();
+        return new PixelPlanes(width, height, copied);
+    }
+
+    // Copy of a rectangle
+    public PixelPlanes crop(int x, int y, int cropWidth, int cropHeight) {
+        byte[][] cropped = new byte[planes.length][cropWidth * cropHeight];
+        for (int c = 0; c < planes.length; c++) {
+            for (int row = 0; row < cropHeight; row++) {
+                System.arraycopy(planes[c], (y + row) * width + x, cropped[c], row * cropWidth, cropWidth);
+            }
+        }
+        return new PixelPlanes(cropWidth, cropHeight, cropped);
+    }
+
+    // Packed RGB at flat index
+    public int getRGB(int index) {
+        if (planes.length == 1) {
+            int v = planes[0][index] & 0xFF;
+            return (v << 16) | (v << 8) | v;
+        }
+        return ((planes[0][index] & 0xFF) << 16) | ((planes[1][index] & 0xFF) << 8) | (planes[2][index] & 0xFF);
+    }
+
+    // Channel value at pixel
+    public int get(int channel, int x, int y) {
+        return planes[channel][y * width + x] & 0xFF;
+    }
+
+    // Data getters
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getChannels() { return planes.length; }
+    public byte[] getPlane(int channel) { return planes[channel]; }
+}
\ No newline at end of file
@@ -0,0 +1,9 @@
+package src.util;
+
+// Callbacks from a running compression, tiled builds call from worker threads
+public interface ProgressListener {
+    void phaseStarted(String phase);
+
+    // Pixels done are covered by finished leaves, total and ETA are 0 and -1 when unknown
+    void progress(String phase, long nodes, long pixelsDone, long pixelsTotal, long etaMs);
+}
\ No newline at end of file
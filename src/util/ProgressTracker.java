@@ -0,0 +1,76 @@
+package src.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counters and cancellation shared by the phases of one compression
+public class ProgressTracker {
+    private static final long REPORT_INTERVAL_NANOS = 100_000_000L;
+
+    private final ProgressListener listener;
+    private final CancellationToken token;
+    private final AtomicLong nodes = new AtomicLong();
+    private final AtomicLong pixels = new AtomicLong();
+    private volatile String phase;
+    private volatile long pixelsTotal;
+    private volatile long phaseStart;
+    private long lastReport;
+
+    // Either may be null
+    public ProgressTracker(ProgressListener listener, CancellationToken token) {
+        this.listener = listener;
+        this.token = token;
+    }
+
+    // Reset counters, pixelsTotal 0 when the phase has no pixel measure
+    public void startPhase(String phase, long pixelsTotal) {
+        checkCancelled();
+        this.phase = phase;
+        this.pixelsTotal = pixelsTotal;
+        this.phaseStart = System.nanoTime();
+        nodes.set(0);
+        pixels.set(0);
+        synchronized (this) {
+            lastReport = phaseStart;
+        }
+        if (listener != null) {
+            listener.phaseStarted(phase);
+        }
+    }
+
+    // Work since the last call, throws CancellationException once cancelled
+    public void advance(long nodeDelta, long pixelDelta) {
+        checkCancelled();
+        long nodeCount = nodes.addAndGet(nodeDelta);
+        long pixelCount = pixels.addAndGet(pixelDelta);
+        if (listener == null) return;
+
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (now - lastReport < REPORT_INTERVAL_NANOS) return;
+            lastReport = now;
+        }
+        listener.progress(phase, nodeCount, pixelCount, pixelsTotal, eta(now, pixelCount));
+    }
+
+    // Remaining pixels at the phase's average rate so far
+    private long eta(long now, long pixelCount) {
+        long total = pixelsTotal;
+        if (total <= 0 || pixelCount <= 0) return -1;
+        double elapsedMs = (now - phaseStart) / 1e6;
+        return (long) (elapsedMs * Math.max(0, total - pixelCount) / pixelCount);
+    }
+
+    public void checkCancelled() {
+        if (token != null) {
+            token.throwIfCancelled();
+        }
+    }
+
+    public boolean isCancelled() {
+        return token != null && token.isCancelled();
+    }
+
+    public String getPhase() { return phase; }
+    public long getNodes() { return nodes.get(); }
+    public long getPixels() { return pixels.get(); }
+}
\ No newline at end of file